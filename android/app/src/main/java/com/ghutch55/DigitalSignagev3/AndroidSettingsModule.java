@@ -1,14 +1,78 @@
 package com.ghutch55.DigitalSignagev3;
 
+import android.app.ActivityManager;
 import android.content.Context;
+import android.database.ContentObserver;
+import android.hardware.display.DisplayManager;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.StatFs;
 import android.provider.Settings;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.view.Display;
+
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 
 public class AndroidSettingsModule extends ReactContextBaseJavaModule {
     private static final String MODULE_NAME = "AndroidSettingsModule";
+    private static final String TAG = "AndroidSettingsModule";
+    private static final String SNAPSHOT_CHANGED_EVENT = "DeviceSnapshotChanged";
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Build, RAM class and codecs: read once per process
+    private Bundle fixedInfo;
+    // Parts that can change while running, as last sent to JS; null until
+    // the first snapshot, which also starts the watchers below
+    private Bundle changingInfo;
+
+    private final DisplayManager.DisplayListener displayListener = new DisplayManager.DisplayListener() {
+        @Override
+        public void onDisplayAdded(int displayId) {
+        }
+
+        @Override
+        public void onDisplayRemoved(int displayId) {
+        }
+
+        @Override
+        public void onDisplayChanged(int displayId) {
+            if (displayId == Display.DEFAULT_DISPLAY) {
+                publishChange("display", displayInfo());
+            }
+        }
+    };
+
+    // ConnectivityModule already follows the default network in this process
+    private final Runnable networkObserver = () -> publishChange("network", networkInfo());
+
+    private final ContentObserver deviceNameObserver = new ContentObserver(mainHandler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            String name = readDeviceName(getReactApplicationContext());
+            publishChange("deviceName", name != null ? name : "");
+        }
+    };
 
     public AndroidSettingsModule(ReactApplicationContext reactContext) {
         super(reactContext);
@@ -19,19 +83,48 @@ public class AndroidSettingsModule extends ReactContextBaseJavaModule {
         return MODULE_NAME;
     }
 
-    @ReactMethod
-    public void getDeviceName(Promise promise) {
-        try {
-            Context context = getReactApplicationContext();
+    @Override
+    public void invalidate() {
+        super.invalidate();
+        synchronized (this) {
+            if (changingInfo == null) {
+                return;
+            }
+            changingInfo = null;
+        }
+        Context context = getReactApplicationContext();
+        ((DisplayManager) context.getSystemService(Context.DISPLAY_SERVICE)).unregisterDisplayListener(displayListener);
+        context.getContentResolver().unregisterContentObserver(deviceNameObserver);
+        ConnectivityModule connectivity = getReactApplicationContext().getNativeModule(ConnectivityModule.class);
+        if (connectivity != null) {
+            connectivity.removeObserver(networkObserver);
+        }
+    }
+
+    // Also used by SignageSettingsModule
+    static String readDeviceName(Context context) {
+        String deviceName = Settings.Global.getString(
+                context.getContentResolver(),
+                Settings.Global.DEVICE_NAME);
 
-            String deviceName = Settings.Global.getString(
+        if (deviceName == null || deviceName.isEmpty()) {
+            deviceName = Settings.Secure.getString(
                     context.getContentResolver(),
-                    Settings.Global.DEVICE_NAME);
+                    "bluetooth_name");
+        }
+        return deviceName;
+    }
 
+    @ReactMethod
+    public void getDeviceName(Promise promise) {
+        try {
+            String deviceName;
+            synchronized (this) {
+                // Kept current by deviceNameObserver once a snapshot was taken
+                deviceName = changingInfo != null ? changingInfo.getString("deviceName") : null;
+            }
             if (deviceName == null || deviceName.isEmpty()) {
-                deviceName = Settings.Secure.getString(
-                        context.getContentResolver(),
-                        "bluetooth_name");
+                deviceName = readDeviceName(getReactApplicationContext());
             }
 
             if (deviceName != null && !deviceName.isEmpty()) {
@@ -43,4 +136,258 @@ public class AndroidSettingsModule extends ReactContextBaseJavaModule {
             promise.reject("DEVICE_NAME_ERROR", "Error getting device name: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    // Boot milestones (ms since boot) for the last few boots, newest first.
+    // The warm-up ones come from the :sync process and are recorded here.
+    @ReactMethod
+    public void getBootTimings(Promise promise) {
+        SignageSyncClient.getInstance(getReactApplicationContext()).call(s -> {
+            try {
+                JSONObject warmup = new JSONObject(s.getWarmupTimings());
+                Iterator<String> stages = warmup.keys();
+                while (stages.hasNext()) {
+                    String stage = stages.next();
+                    BootTimings.mark(getReactApplicationContext(), stage, warmup.getLong(stage));
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "Could not read warm-up timings", e);
+            }
+            resolveBootTimings(promise);
+        });
+    }
+
+    private void resolveBootTimings(Promise promise) {
+        try {
+            JSONArray history = BootTimings.history(getReactApplicationContext());
+            WritableArray boots = Arguments.createArray();
+            for (int i = 0; i < history.length(); i++) {
+                JSONObject record = history.getJSONObject(i);
+                WritableMap boot = Arguments.createMap();
+                Iterator<String> keys = record.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    boot.putDouble(key, record.getLong(key));
+                }
+                boots.pushMap(boot);
+            }
+            promise.resolve(boots);
+        } catch (Exception e) {
+            promise.reject("BOOT_TIMINGS_ERROR", "Error reading boot timings: " + e.getMessage());
+        }
+    }
+
+    // Everything startup needs about the device in one bridge crossing:
+    // name, build, display, video decoders, storage, RAM class and network.
+    // The immutable parts are gathered once; afterwards only the groups
+    // that change are pushed as SNAPSHOT_CHANGED_EVENT deltas.
+    @ReactMethod
+    public void getDeviceSnapshot(Promise promise) {
+        try {
+            Bundle snapshot = new Bundle();
+            synchronized (this) {
+                if (fixedInfo == null) {
+                    fixedInfo = readFixedInfo();
+                }
+                snapshot.putAll(fixedInfo);
+                if (changingInfo == null) {
+                    changingInfo = readChangingInfo();
+                    startWatching();
+                }
+                snapshot.putAll(changingInfo);
+            }
+            // Free space drifts with every download; read fresh per call
+            // rather than pushed
+            snapshot.putBundle("storage", storageInfo());
+            promise.resolve(Arguments.fromBundle(snapshot));
+        } catch (Exception e) {
+            promise.reject("DEVICE_SNAPSHOT_ERROR", "Error reading device snapshot: " + e.getMessage());
+        }
+    }
+
+    private Bundle readFixedInfo() {
+        Context context = getReactApplicationContext();
+        Bundle info = new Bundle();
+
+        Bundle build = new Bundle();
+        build.putString("manufacturer", Build.MANUFACTURER);
+        build.putString("model", Build.MODEL);
+        build.putInt("sdkInt", Build.VERSION.SDK_INT);
+        info.putBundle("build", build);
+
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+        activityManager.getMemoryInfo(memoryInfo);
+        Bundle memory = new Bundle();
+        memory.putDouble("totalBytes", memoryInfo.totalMem);
+        memory.putInt("memoryClassMb", activityManager.getMemoryClass());
+        memory.putBoolean("lowRamDevice", activityManager.isLowRamDevice());
+        info.putBundle("memory", memory);
+
+        info.putParcelableArray("videoDecoders", videoDecoders());
+        return info;
+    }
+
+    // Best decoder per video MIME type, preferring hardware ones
+    private static Bundle[] videoDecoders() {
+        Map<String, Bundle> best = new LinkedHashMap<>();
+        for (MediaCodecInfo codec : new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos()) {
+            if (codec.isEncoder()) {
+                continue;
+            }
+            boolean hardware = isHardware(codec);
+            for (String type : codec.getSupportedTypes()) {
+                if (!type.startsWith("video/")) {
+                    continue;
+                }
+                MediaCodecInfo.VideoCapabilities video;
+                try {
+                    video = codec.getCapabilitiesForType(type).getVideoCapabilities();
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+                if (video == null) {
+                    continue;
+                }
+                Bundle current = best.get(type);
+                int maxWidth = video.getSupportedWidths().getUpper();
+                int maxHeight = video.getSupportedHeights().getUpper();
+                if (current != null && (current.getBoolean("hardware") && !hardware
+                        || current.getBoolean("hardware") == hardware
+                        && current.getInt("maxWidth") * current.getInt("maxHeight") >= maxWidth * maxHeight)) {
+                    continue;
+                }
+                Bundle decoder = new Bundle();
+                decoder.putString("mimeType", type);
+                decoder.putString("name", codec.getName());
+                decoder.putBoolean("hardware", hardware);
+                decoder.putInt("maxWidth", maxWidth);
+                decoder.putInt("maxHeight", maxHeight);
+                best.put(type, decoder);
+            }
+        }
+        return best.values().toArray(new Bundle[0]);
+    }
+
+    private static boolean isHardware(MediaCodecInfo codec) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return codec.isHardwareAccelerated();
+        }
+        String name = codec.getName().toLowerCase(Locale.US);
+        return !name.startsWith("omx.google.") && !name.startsWith("c2.android.");
+    }
+
+    private Bundle readChangingInfo() {
+        Bundle info = new Bundle();
+        String name = readDeviceName(getReactApplicationContext());
+        info.putString("deviceName", name != null ? name : "");
+        info.putBundle("display", displayInfo());
+        info.putBundle("network", networkInfo());
+        return info;
+    }
+
+    private Bundle displayInfo() {
+        DisplayManager displayManager = (DisplayManager) getReactApplicationContext()
+                .getSystemService(Context.DISPLAY_SERVICE);
+        Display display = displayManager.getDisplay(Display.DEFAULT_DISPLAY);
+        Bundle info = new Bundle();
+        if (display == null) {
+            return info;
+        }
+        // The mode is the panel's real resolution; TV boxes often render
+        // their UI at a lower one
+        Display.Mode mode = display.getMode();
+        DisplayMetrics metrics = new DisplayMetrics();
+        display.getRealMetrics(metrics);
+        info.putInt("width", mode.getPhysicalWidth());
+        info.putInt("height", mode.getPhysicalHeight());
+        info.putInt("uiWidth", metrics.widthPixels);
+        info.putInt("uiHeight", metrics.heightPixels);
+        info.putInt("densityDpi", metrics.densityDpi);
+        info.putDouble("refreshRate", mode.getRefreshRate());
+        Display.Mode[] modes = display.getSupportedModes();
+        double[] refreshRates = new double[modes.length];
+        for (int i = 0; i < modes.length; i++) {
+            refreshRates[i] = modes[i].getRefreshRate();
+        }
+        info.putDoubleArray("supportedRefreshRates", Arrays.stream(refreshRates).distinct().sorted().toArray());
+        return info;
+    }
+
+    private Bundle storageInfo() {
+        StatFs stat = new StatFs(getReactApplicationContext().getFilesDir().getPath());
+        Bundle info = new Bundle();
+        info.putDouble("freeBytes", stat.getAvailableBytes());
+        info.putDouble("totalBytes", stat.getTotalBytes());
+        return info;
+    }
+
+    private Bundle networkInfo() {
+        ConnectivityModule connectivity = getReactApplicationContext().getNativeModule(ConnectivityModule.class);
+        return connectivity != null ? connectivity.networkInfo() : new Bundle();
+    }
+
+    private void startWatching() {
+        Context context = getReactApplicationContext();
+        ((DisplayManager) context.getSystemService(Context.DISPLAY_SERVICE))
+                .registerDisplayListener(displayListener, mainHandler);
+        // Both places readDeviceName() looks
+        context.getContentResolver().registerContentObserver(
+                Settings.Global.getUriFor(Settings.Global.DEVICE_NAME), false, deviceNameObserver);
+        context.getContentResolver().registerContentObserver(
+                Settings.Secure.getUriFor("bluetooth_name"), false, deviceNameObserver);
+        ConnectivityModule connectivity = getReactApplicationContext().getNativeModule(ConnectivityModule.class);
+        if (connectivity != null) {
+            connectivity.addObserver(networkObserver);
+        }
+    }
+
+    // Sends a group only when its contents differ from what JS already has
+    private void publishChange(String key, Object value) {
+        synchronized (this) {
+            if (changingInfo == null || sameValue(changingInfo.get(key), value)) {
+                return;
+            }
+            putValue(changingInfo, key, value);
+        }
+        Bundle delta = new Bundle();
+        putValue(delta, key, value);
+        Log.d(TAG, "Device " + key + " changed");
+        SignageEvents.emit(getReactApplicationContext(), SNAPSHOT_CHANGED_EVENT, Arguments.fromBundle(delta));
+    }
+
+    private static void putValue(Bundle bundle, String key, Object value) {
+        if (value instanceof Bundle) {
+            bundle.putBundle(key, (Bundle) value);
+        } else {
+            bundle.putString(key, (String) value);
+        }
+    }
+
+    private static boolean sameValue(Object a, Object b) {
+        if (a instanceof Bundle && b instanceof Bundle) {
+            Bundle left = (Bundle) a;
+            Bundle right = (Bundle) b;
+            if (!left.keySet().equals(right.keySet())) {
+                return false;
+            }
+            for (String key : left.keySet()) {
+                if (!sameValue(left.get(key), right.get(key))) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (a instanceof double[] && b instanceof double[]) {
+            return Arrays.equals((double[]) a, (double[]) b);
+        }
+        return Objects.equals(a, b);
+    }
+
+    // Required by NativeEventEmitter on the JS side
+    @ReactMethod
+    public void addListener(String eventName) {
+    }
+
+    @ReactMethod
+    public void removeListeners(double count) {
+    }
+}
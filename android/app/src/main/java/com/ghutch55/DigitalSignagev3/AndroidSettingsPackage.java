@@ -6,19 +6,24 @@ import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.uimanager.ViewManager;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 public class AndroidSettingsPackage implements ReactPackage {
     @Override
     public List<ViewManager> createViewManagers(ReactApplicationContext reactContext) {
-        return Collections.emptyList();
+        List<ViewManager> managers = new ArrayList<>();
+        managers.add(new SignagePlayerViewManager());
+        return managers;
     }
 
     @Override
     public List<NativeModule> createNativeModules(ReactApplicationContext reactContext) {
         List<NativeModule> modules = new ArrayList<>();
         modules.add(new AndroidSettingsModule(reactContext));
+        modules.add(new AssetDownloadModule(reactContext));
+        modules.add(new ConnectivityModule(reactContext));
+        modules.add(new PlaylistPollerModule(reactContext));
+        modules.add(new SignagePlayerModule(reactContext));
         return modules;
     }
 }
\ No newline at end of file
@@ -0,0 +1,360 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class AssetCacheIndex extends SQLiteOpenHelper {
+    private static final String DB_NAME = "signage_cache.db";
+    private static final int DB_VERSION = 4;
+
+    private static final String TABLE_ASSETS = "assets";
+    private static final String TABLE_OBJECTS = "objects";
+    private static final String TABLE_DOWNLOADS = "downloads";
+
+    private static AssetCacheIndex instance;
+
+    public static class Entry {
+        public final String url;
+        public final String sha256;
+        public final String extension;
+        public final String etag;
+        public final String lastModified;
+        public final long size;
+
+        Entry(String url, String sha256, String extension, String etag, String lastModified, long size) {
+            this.url = url;
+            this.sha256 = sha256;
+            this.extension = extension;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+    }
+
+    public static class StoredObject {
+        public final String sha256;
+        public final String extension;
+        public final long size;
+        public final long lastPlayedAt;
+
+        StoredObject(String sha256, String extension, long size, long lastPlayedAt) {
+            this.sha256 = sha256;
+            this.extension = extension;
+            this.size = size;
+            this.lastPlayedAt = lastPlayedAt;
+        }
+    }
+
+    // A transfer in progress: the part file holds committedBytes of the
+    // response identified by the validators. Segmented transfers also carry
+    // the bytes done within each of their equally sized ranges.
+    public static class Download {
+        public final String url;
+        public final String partName;
+        public final String etag;
+        public final String lastModified;
+        public final long totalBytes;
+        public final long committedBytes;
+        public final long[] segmentOffsets;
+
+        Download(String url, String partName, String etag, String lastModified, long totalBytes,
+                 long committedBytes, long[] segmentOffsets) {
+            this.url = url;
+            this.partName = partName;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.totalBytes = totalBytes;
+            this.committedBytes = committedBytes;
+            this.segmentOffsets = segmentOffsets;
+        }
+
+        public boolean isSegmented() {
+            return segmentOffsets != null;
+        }
+
+        // If-Range value; strong ETag preferred
+        public String validator() {
+            return etag != null ? etag : lastModified;
+        }
+    }
+
+    public static synchronized AssetCacheIndex getInstance(Context context) {
+        if (instance == null) {
+            instance = new AssetCacheIndex(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private AssetCacheIndex(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        // assets: what we know about each remote URL (validators + which blob it resolved to)
+        db.execSQL("CREATE TABLE " + TABLE_ASSETS + " ("
+                + "url TEXT PRIMARY KEY, "
+                + "sha256 TEXT NOT NULL, "
+                + "etag TEXT, "
+                + "last_modified TEXT, "
+                + "size INTEGER NOT NULL, "
+                + "fetched_at INTEGER NOT NULL)");
+        // objects: one row per stored blob, keyed by content hash
+        db.execSQL("CREATE TABLE " + TABLE_OBJECTS + " ("
+                + "sha256 TEXT PRIMARY KEY, "
+                + "extension TEXT NOT NULL, "
+                + "size INTEGER NOT NULL, "
+                + "created_at INTEGER NOT NULL, "
+                + "last_played_at INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE INDEX assets_sha256 ON " + TABLE_ASSETS + " (sha256)");
+        createDownloadsTable(db);
+    }
+
+    // downloads: journal of partially transferred URLs, so a restart resumes
+    // with a Range request instead of starting over
+    private static void createDownloadsTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_DOWNLOADS + " ("
+                + "url TEXT PRIMARY KEY, "
+                + "part_name TEXT NOT NULL, "
+                + "etag TEXT, "
+                + "last_modified TEXT, "
+                + "total_bytes INTEGER NOT NULL, "
+                + "committed_bytes INTEGER NOT NULL, "
+                + "segment_offsets TEXT, "
+                + "updated_at INTEGER NOT NULL)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            db.execSQL("ALTER TABLE " + TABLE_OBJECTS
+                    + " ADD COLUMN last_played_at INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("UPDATE " + TABLE_OBJECTS + " SET last_played_at = created_at");
+        }
+        if (oldVersion < 3) {
+            createDownloadsTable(db);
+        } else if (oldVersion < 4) {
+            db.execSQL("ALTER TABLE " + TABLE_DOWNLOADS + " ADD COLUMN segment_offsets TEXT");
+        }
+    }
+
+    public Entry findByUrl(String url) {
+        try (Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT a.url, a.sha256, o.extension, a.etag, a.last_modified, a.size FROM "
+                        + TABLE_ASSETS + " a JOIN " + TABLE_OBJECTS + " o ON a.sha256 = o.sha256"
+                        + " WHERE a.url = ?",
+                new String[]{url})) {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            return new Entry(
+                    cursor.getString(0),
+                    cursor.getString(1),
+                    cursor.getString(2),
+                    cursor.isNull(3) ? null : cursor.getString(3),
+                    cursor.isNull(4) ? null : cursor.getString(4),
+                    cursor.getLong(5));
+        }
+    }
+
+    public String findObjectExtension(String sha256) {
+        try (Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT extension FROM " + TABLE_OBJECTS + " WHERE sha256 = ?",
+                new String[]{sha256})) {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        }
+    }
+
+    // sha256 -> extension for every stored blob
+    public Map<String, String> listObjects() {
+        Map<String, String> objects = new HashMap<>();
+        try (Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT sha256, extension FROM " + TABLE_OBJECTS, null)) {
+            while (cursor.moveToNext()) {
+                objects.put(cursor.getString(0), cursor.getString(1));
+            }
+        }
+        return objects;
+    }
+
+    // Least recently played first, i.e. eviction order
+    public List<StoredObject> listObjectsByLastPlayed() {
+        List<StoredObject> objects = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT sha256, extension, size, last_played_at FROM " + TABLE_OBJECTS
+                        + " ORDER BY last_played_at ASC", null)) {
+            while (cursor.moveToNext()) {
+                objects.add(new StoredObject(cursor.getString(0), cursor.getString(1),
+                        cursor.getLong(2), cursor.getLong(3)));
+            }
+        }
+        return objects;
+    }
+
+    public long totalObjectBytes() {
+        try (Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT COALESCE(SUM(size), 0) FROM " + TABLE_OBJECTS, null)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+
+    public void markPlayed(String sha256, long playedAt) {
+        ContentValues values = new ContentValues();
+        values.put("last_played_at", playedAt);
+        getWritableDatabase().update(TABLE_OBJECTS, values, "sha256 = ?", new String[]{sha256});
+    }
+
+    public void putObject(String sha256, String extension, long size) {
+        long now = System.currentTimeMillis();
+        ContentValues values = new ContentValues();
+        values.put("sha256", sha256);
+        values.put("extension", extension);
+        values.put("size", size);
+        values.put("created_at", now);
+        values.put("last_played_at", now);
+        getWritableDatabase().insertWithOnConflict(TABLE_OBJECTS, null, values,
+                SQLiteDatabase.CONFLICT_IGNORE);
+    }
+
+    public void putAsset(String url, String sha256, String etag, String lastModified, long size) {
+        ContentValues values = new ContentValues();
+        values.put("url", url);
+        values.put("sha256", sha256);
+        values.put("etag", etag);
+        values.put("last_modified", lastModified);
+        values.put("size", size);
+        values.put("fetched_at", System.currentTimeMillis());
+        getWritableDatabase().insertWithOnConflict(TABLE_ASSETS, null, values,
+                SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    public void removeObject(String sha256) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_ASSETS, "sha256 = ?", new String[]{sha256});
+            db.delete(TABLE_OBJECTS, "sha256 = ?", new String[]{sha256});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public Download findDownload(String url) {
+        try (Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT url, part_name, etag, last_modified, total_bytes, committed_bytes, segment_offsets FROM "
+                        + TABLE_DOWNLOADS + " WHERE url = ?",
+                new String[]{url})) {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            return new Download(
+                    cursor.getString(0),
+                    cursor.getString(1),
+                    cursor.isNull(2) ? null : cursor.getString(2),
+                    cursor.isNull(3) ? null : cursor.getString(3),
+                    cursor.getLong(4),
+                    cursor.getLong(5),
+                    cursor.isNull(6) ? null : decodeOffsets(cursor.getString(6)));
+        }
+    }
+
+    public Set<String> listDownloadParts() {
+        Set<String> parts = new HashSet<>();
+        try (Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT part_name FROM " + TABLE_DOWNLOADS, null)) {
+            while (cursor.moveToNext()) {
+                parts.add(cursor.getString(0));
+            }
+        }
+        return parts;
+    }
+
+    public void putDownload(Download download) {
+        ContentValues values = new ContentValues();
+        values.put("url", download.url);
+        values.put("part_name", download.partName);
+        values.put("etag", download.etag);
+        values.put("last_modified", download.lastModified);
+        values.put("total_bytes", download.totalBytes);
+        values.put("committed_bytes", download.committedBytes);
+        values.put("segment_offsets", download.isSegmented() ? encodeOffsets(download.segmentOffsets) : null);
+        values.put("updated_at", System.currentTimeMillis());
+        getWritableDatabase().insertWithOnConflict(TABLE_DOWNLOADS, null, values,
+                SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    public void updateDownloadOffset(String url, long committedBytes) {
+        ContentValues values = new ContentValues();
+        values.put("committed_bytes", committedBytes);
+        values.put("updated_at", System.currentTimeMillis());
+        getWritableDatabase().update(TABLE_DOWNLOADS, values, "url = ?", new String[]{url});
+    }
+
+    public void updateDownloadSegments(String url, long[] segmentOffsets) {
+        long committedBytes = 0;
+        for (long offset : segmentOffsets) {
+            committedBytes += offset;
+        }
+        ContentValues values = new ContentValues();
+        values.put("committed_bytes", committedBytes);
+        values.put("segment_offsets", encodeOffsets(segmentOffsets));
+        values.put("updated_at", System.currentTimeMillis());
+        getWritableDatabase().update(TABLE_DOWNLOADS, values, "url = ?", new String[]{url});
+    }
+
+    // Transfers nobody has touched since the cutoff (their URL left the
+    // playlist); returns the part files to delete
+    public List<String> removeDownloadsUpdatedBefore(long cutoff) {
+        List<String> parts = new ArrayList<>();
+        String[] args = new String[]{String.valueOf(cutoff)};
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try (Cursor cursor = db.rawQuery(
+                "SELECT part_name FROM " + TABLE_DOWNLOADS + " WHERE updated_at < ?", args)) {
+            while (cursor.moveToNext()) {
+                parts.add(cursor.getString(0));
+            }
+            db.delete(TABLE_DOWNLOADS, "updated_at < ?", args);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return parts;
+    }
+
+    public void removeDownload(String url) {
+        getWritableDatabase().delete(TABLE_DOWNLOADS, "url = ?", new String[]{url});
+    }
+
+    private static String encodeOffsets(long[] offsets) {
+        StringBuilder encoded = new StringBuilder();
+        for (int i = 0; i < offsets.length; i++) {
+            if (i > 0) {
+                encoded.append(',');
+            }
+            encoded.append(offsets[i]);
+        }
+        return encoded.toString();
+    }
+
+    private static long[] decodeOffsets(String encoded) {
+        String[] parts = encoded.split(",");
+        long[] offsets = new long[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            offsets[i] = Long.parseLong(parts[i]);
+        }
+        return offsets;
+    }
+}
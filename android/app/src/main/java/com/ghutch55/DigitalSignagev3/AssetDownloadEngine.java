@@ -0,0 +1,891 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+public class AssetDownloadEngine {
+    private static final String TAG = "AssetDownloadEngine";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long PROGRESS_INTERVAL_MS = 250;
+    // Synced to disk and journaled this often, bounding what a power cut loses
+    private static final long CHECKPOINT_BYTES = 8 * 1024 * 1024;
+    private static final int RESUME_ATTEMPTS = 5;
+    // Bodies at least this large are fetched as SEGMENT_COUNT parallel ranges
+    private static final long SEGMENT_THRESHOLD_BYTES = 32 * 1024 * 1024;
+    private static final int SEGMENT_COUNT = 4;
+    // Bytes of a video on disk before it is offered for playback mid-download
+    public static final long DEFAULT_STREAM_BUFFER_BYTES = 8 * 1024 * 1024;
+    private static final long RESUME_DELAY_MS = 2000;
+    // Finished part files whose outcome is remembered for streaming readers
+    private static final int MAX_PART_OUTCOMES = 64;
+    private static final AtomicInteger TASK_SEQUENCE = new AtomicInteger();
+
+    public static final String TYPE_IMAGE = "image";
+    public static final String TYPE_VIDEO = "video";
+    public static final String TYPE_WEB = "web";
+
+    public static final String STATE_QUEUED = "queued";
+    public static final String STATE_DOWNLOADING = "downloading";
+    public static final String STATE_CACHED = "cached";
+    public static final String STATE_COMPLETED = "completed";
+    public static final String STATE_FAILED = "failed";
+
+    // Preempts everything else (own worker lane, first claim on bandwidth)
+    public static final int PRIORITY_URGENT = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    // Prefetch: only runs inside the off-peak windows
+    public static final int PRIORITY_BACKGROUND = 2;
+    // Workers reserved for urgent requests, so they never wait for the pool
+    private static final int URGENT_LANES = 2;
+
+    private static final List<String> IMAGE_TYPES = Arrays.asList("jpg", "jpeg", "png", "gif", "webp");
+    private static final List<String> VIDEO_TYPES = Arrays.asList("mp4", "webm", "mov", "avi");
+    private static final List<String> WEB_TYPES = Arrays.asList("url", "html", "stream");
+
+    public static class Request {
+        public final int index;
+        public final String url;
+        public final String fileType;
+        public final int durationSeconds;
+        public final String name;
+        public final int priority;
+
+        public Request(int index, String url, String fileType, int durationSeconds, String name) {
+            this(index, url, fileType, durationSeconds, name, PRIORITY_NORMAL);
+        }
+
+        public Request(int index, String url, String fileType, int durationSeconds, String name, int priority) {
+            this.index = index;
+            this.url = url;
+            this.fileType = fileType;
+            this.durationSeconds = durationSeconds;
+            this.name = name;
+            this.priority = priority;
+        }
+    }
+
+    public static class Result {
+        public final Request request;
+        public final String type;
+        public final String localUrl;
+        public final Exception error;
+
+        public Result(Request request, String type, String localUrl, Exception error) {
+            this.request = request;
+            this.type = type;
+            this.localUrl = localUrl;
+            this.error = error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+
+    public interface Listener {
+        void onAssetProgress(Request request, String state, long bytesDownloaded, long totalBytes);
+    }
+
+    // Each successful result, as soon as its file is committed
+    public interface Ready {
+        void onReady(Result result);
+
+        // A video that can already be played from its part file (see
+        // GrowingFileDataSource); onReady follows once it is cached
+        default void onStreamable(Result result) {
+        }
+    }
+
+    public interface Completion {
+        void onComplete(List<Result> results);
+    }
+
+    // The one transfer running for a URL. The part file and its journal are
+    // keyed by URL, so a second request (an edited playlist re-queueing it,
+    // or a prefetch overlapping the active list) waits for this one instead
+    // of appending to the same file, and lends it its priority.
+    private static class InFlight implements IntSupplier {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile int priority;
+        volatile Result result;
+
+        InFlight(int priority) {
+            this.priority = priority;
+        }
+
+        synchronized void raise(int priority) {
+            this.priority = Math.min(this.priority, priority);
+        }
+
+        void finish(Result result) {
+            this.result = result;
+            done.countDown();
+        }
+
+        @Override
+        public int getAsInt() {
+            return priority;
+        }
+    }
+
+    private final AssetStore store;
+    private final CacheBudgetManager budget;
+    private final OkHttpClient client;
+    private final ThreadPoolExecutor executor;
+    private final ThreadPoolExecutor segmentExecutor;
+    private final ThreadPoolExecutor urgentExecutor;
+    private final ThreadPoolExecutor urgentSegmentExecutor;
+    private final ScheduledThreadPoolExecutor offPeakTimer;
+    private final BandwidthScheduler bandwidth = new BandwidthScheduler();
+    // Background tasks waiting for the next off-peak window
+    private final List<PrioritizedTask> deferred = new ArrayList<>();
+    private ScheduledFuture<?> pendingRelease;
+    // Part file name -> contiguous bytes written so far, for transfers in flight
+    private final Map<String, LongSupplier> frontiers = new ConcurrentHashMap<>();
+    // Part file name -> FRONTIER_COMMITTED or FRONTIER_FAILED once no
+    // transfer writes it; a part that is neither may still be resumed
+    private final Map<String, Long> partOutcomes = Collections.synchronizedMap(
+            new LinkedHashMap<String, Long>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                    return size() > MAX_PART_OUTCOMES;
+                }
+            });
+    // Remote URL -> the transfer fetching it
+    private final Map<String, InFlight> inFlight = new ConcurrentHashMap<>();
+    private volatile long streamBufferBytes = DEFAULT_STREAM_BUFFER_BYTES;
+    private final Listener listener;
+
+    public AssetDownloadEngine(AssetStore store, CacheBudgetManager budget, OkHttpClient client,
+                               int maxParallel, Listener listener) {
+        this.store = store;
+        this.budget = budget;
+        this.client = client;
+        this.listener = listener;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "asset-download-" + threadCount.incrementAndGet());
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        };
+        // Fixed-size pool: the number of concurrent transfers is bounded no matter
+        // how long the playlist is, everything else waits in the queue, which
+        // hands out the earliest assets in playing order first.
+        this.executor = new ThreadPoolExecutor(maxParallel, maxParallel, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), threadFactory);
+        this.executor.allowCoreThreadTimeOut(true);
+
+        // Range connections for segmented downloads; shared, so two large
+        // videos split SEGMENT_COUNT connections rather than doubling them
+        AtomicInteger segmentThreadCount = new AtomicInteger();
+        this.segmentExecutor = new ThreadPoolExecutor(SEGMENT_COUNT, SEGMENT_COUNT, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "asset-segment-" + segmentThreadCount.incrementAndGet());
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                });
+        this.segmentExecutor.allowCoreThreadTimeOut(true);
+
+        AtomicInteger urgentThreadCount = new AtomicInteger();
+        this.urgentExecutor = new ThreadPoolExecutor(URGENT_LANES, URGENT_LANES, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), runnable ->
+                new Thread(runnable, "asset-urgent-" + urgentThreadCount.incrementAndGet()));
+        this.urgentExecutor.allowCoreThreadTimeOut(true);
+
+        // Ranges of urgent transfers never queue behind normal ranges, which
+        // hold off for the urgent transfer while they occupy the shared pool
+        AtomicInteger urgentSegmentThreadCount = new AtomicInteger();
+        this.urgentSegmentExecutor = new ThreadPoolExecutor(SEGMENT_COUNT, SEGMENT_COUNT, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable ->
+                new Thread(runnable, "asset-urgent-segment-" + urgentSegmentThreadCount.incrementAndGet()));
+        this.urgentSegmentExecutor.allowCoreThreadTimeOut(true);
+
+        this.offPeakTimer = new ScheduledThreadPoolExecutor(1, runnable ->
+                new Thread(runnable, "asset-off-peak"));
+    }
+
+    // Total download rate cap (0 for none) and the daily windows background
+    // requests may run in ("HH:MM-HH:MM,..."; empty for any time)
+    public void configureBandwidth(long bytesPerSecond, String offPeakWindows) {
+        bandwidth.configure(bytesPerSecond, offPeakWindows);
+        Log.d(TAG, "Bandwidth capped at " + bytesPerSecond + " B/s, off-peak windows: " + offPeakWindows);
+        releaseDeferred();
+    }
+
+    // Throughput, bytes per priority and queue depths for this box
+    public Bundle getMetrics() {
+        Bundle metrics = bandwidth.getMetrics();
+        metrics.putInt("queued", executor.getQueue().size() + urgentExecutor.getQueue().size());
+        metrics.putInt("active", executor.getActiveCount() + urgentExecutor.getActiveCount());
+        synchronized (deferred) {
+            metrics.putInt("deferred", deferred.size());
+        }
+        return metrics;
+    }
+
+    public static String classify(String fileType) {
+        String normalized = fileType == null ? "" : fileType.toLowerCase(Locale.US);
+        if (IMAGE_TYPES.contains(normalized)) {
+            return TYPE_IMAGE;
+        }
+        if (VIDEO_TYPES.contains(normalized)) {
+            return TYPE_VIDEO;
+        }
+        if (WEB_TYPES.contains(normalized)) {
+            return TYPE_WEB;
+        }
+        return null;
+    }
+
+    // Downloads every request on the worker pool, reporting each one through
+    // `ready` as it lands and all results, in request order, once the last one
+    // has finished. A URL that appears several times in the batch is only
+    // fetched once.
+    public void downloadAll(List<Request> requests, Ready ready, Completion completion) {
+        if (requests.isEmpty()) {
+            completion.onComplete(Collections.emptyList());
+            return;
+        }
+
+        Map<String, List<Integer>> slotsByUrl = new HashMap<>();
+        List<Request> unique = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            Request request = requests.get(i);
+            List<Integer> slots = slotsByUrl.get(request.url);
+            if (slots == null) {
+                slots = new ArrayList<>();
+                slotsByUrl.put(request.url, slots);
+                unique.add(request);
+            }
+            slots.add(i);
+        }
+
+        Result[] results = new Result[requests.size()];
+        AtomicInteger remaining = new AtomicInteger(unique.size());
+
+        for (Request request : unique) {
+            notifyProgress(request, STATE_QUEUED, 0, -1);
+
+            schedule(new PrioritizedTask(request, () -> {
+                Result result = download(request, ready);
+                if (result.error instanceof BandwidthScheduler.OutsideWindowException) {
+                    return false;
+                }
+                for (int slot : slotsByUrl.get(request.url)) {
+                    Request slotRequest = requests.get(slot);
+                    results[slot] = new Result(slotRequest, result.type, result.localUrl, result.error);
+                    if (results[slot].isSuccess()) {
+                        ready.onReady(results[slot]);
+                    }
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    List<Result> ordered = new ArrayList<>(Arrays.asList(results));
+                    completion.onComplete(ordered);
+                }
+                return true;
+            }));
+        }
+    }
+
+    // Urgent requests get their own lane; background ones wait for an
+    // off-peak window, everything else queues for the pool
+    private void schedule(PrioritizedTask task) {
+        if (task.request.priority == PRIORITY_URGENT) {
+            urgentExecutor.execute(task);
+        } else if (task.request.priority == PRIORITY_BACKGROUND
+                && !bandwidth.isOffPeak(System.currentTimeMillis())) {
+            synchronized (deferred) {
+                deferred.add(task);
+                if (pendingRelease == null) {
+                    long delay = bandwidth.millisUntilOffPeak(System.currentTimeMillis());
+                    Log.d(TAG, "Deferring background downloads for " + delay / 1000 + " s");
+                    pendingRelease = offPeakTimer.schedule(this::releaseDeferred, delay, TimeUnit.MILLISECONDS);
+                }
+            }
+        } else {
+            executor.execute(task);
+        }
+    }
+
+    // Re-routes every deferred task; any still outside a window (the
+    // windows changed, or the clock did) is deferred again
+    private void releaseDeferred() {
+        List<PrioritizedTask> released;
+        synchronized (deferred) {
+            if (pendingRelease != null) {
+                pendingRelease.cancel(false);
+                pendingRelease = null;
+            }
+            released = new ArrayList<>(deferred);
+            deferred.clear();
+        }
+        for (PrioritizedTask task : released) {
+            schedule(task);
+        }
+    }
+
+    private interface TaskBody {
+        // False when the transfer stopped for the end of its off-peak
+        // window and should run again in the next one
+        boolean run();
+    }
+
+    // Priority class first; within one, requests come sorted by
+    // playing_order, so the lowest index is the asset needed on screen
+    // soonest; ties (several batches) go first come first served
+    private class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+        private final int sequence = TASK_SEQUENCE.getAndIncrement();
+        private final Request request;
+        private final TaskBody body;
+
+        PrioritizedTask(Request request, TaskBody body) {
+            this.request = request;
+            this.body = body;
+        }
+
+        @Override
+        public void run() {
+            if (!body.run()) {
+                schedule(this);
+            }
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask other) {
+            if (request.priority != other.request.priority) {
+                return Integer.compare(request.priority, other.request.priority);
+            }
+            if (request.index != other.request.index) {
+                return Integer.compare(request.index, other.request.index);
+            }
+            return Integer.compare(sequence, other.sequence);
+        }
+    }
+
+    // 0 turns streaming off; videos then only play once fully cached
+    public void setStreamBufferBytes(long bytes) {
+        streamBufferBytes = Math.max(0, bytes);
+    }
+
+    // Contiguous bytes from the start of a part file that are on disk, or
+    // one of GrowingFileDataSource's FRONTIER_ states once nothing writes it
+    public long frontier(String partName) {
+        LongSupplier frontier = frontiers.get(partName);
+        if (frontier != null) {
+            return frontier.getAsLong();
+        }
+        Long outcome = partOutcomes.get(partName);
+        return outcome != null ? outcome : GrowingFileDataSource.FRONTIER_UNKNOWN;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        urgentExecutor.shutdownNow();
+        segmentExecutor.shutdownNow();
+        urgentSegmentExecutor.shutdownNow();
+        offPeakTimer.shutdownNow();
+    }
+
+    private Result download(Request request, Ready ready) {
+        InFlight own = new InFlight(request.priority);
+        InFlight running = inFlight.putIfAbsent(request.url, own);
+        if (running != null) {
+            return join(request, running, ready);
+        }
+        Result result = null;
+        try {
+            result = fetch(request, own, ready);
+            return result;
+        } finally {
+            inFlight.remove(request.url, own);
+            own.finish(result);
+        }
+    }
+
+    // Waits for the transfer already fetching this URL and shares its result
+    private Result join(Request request, InFlight running, Ready ready) {
+        Log.d(TAG, "Joining the transfer already fetching " + request.url);
+        running.raise(request.priority);
+        boolean urgent = request.priority == PRIORITY_URGENT;
+        if (urgent) {
+            bandwidth.beginUrgent();
+        }
+        Result shared;
+        try {
+            running.done.await();
+            shared = running.result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            shared = null;
+        } finally {
+            if (urgent) {
+                bandwidth.endUrgent();
+            }
+        }
+
+        if (shared == null) {
+            notifyProgress(request, STATE_FAILED, 0, -1);
+            return new Result(request, classify(request.fileType), null, new IOException("Transfer failed"));
+        }
+        // A background owner stopped for its window before it saw our
+        // priority; carry on from its journal ourselves
+        if (shared.error instanceof BandwidthScheduler.OutsideWindowException
+                && request.priority != PRIORITY_BACKGROUND) {
+            return download(request, ready);
+        }
+        return new Result(request, shared.type, shared.localUrl, shared.error);
+    }
+
+    private Result fetch(Request request, InFlight own, Ready ready) {
+        String type = classify(request.fileType);
+        try {
+            if (type == null) {
+                throw new IOException("Unsupported file type: " + request.fileType);
+            }
+
+            if (TYPE_WEB.equals(type)) {
+                notifyProgress(request, STATE_COMPLETED, 0, 0);
+                return new Result(request, type, request.url, null);
+            }
+
+            if (request.priority == PRIORITY_URGENT) {
+                bandwidth.beginUrgent();
+            }
+            try {
+                File file = fetchToStore(request, own, ready);
+                return new Result(request, type, Uri.fromFile(file).toString(), null);
+            } finally {
+                if (request.priority == PRIORITY_URGENT) {
+                    bandwidth.endUrgent();
+                }
+            }
+        } catch (BandwidthScheduler.OutsideWindowException e) {
+            Log.d(TAG, "Pausing " + request.url + " until the next off-peak window");
+            markPartFailed(store.getIndex().findDownload(request.url));
+            notifyProgress(request, STATE_QUEUED, 0, -1);
+            return new Result(request, type, null, e);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to download " + request.url, e);
+            // Left journaled for the next reconcile, but nothing will write
+            // it before then
+            markPartFailed(store.getIndex().findDownload(request.url));
+            notifyProgress(request, STATE_FAILED, 0, -1);
+            return new Result(request, type, null, e);
+        }
+    }
+
+    // Readers streaming the part stop instead of waiting for it
+    private void markPartFailed(AssetCacheIndex.Download download) {
+        if (download != null) {
+            partOutcomes.put(download.partName, GrowingFileDataSource.FRONTIER_FAILED);
+        }
+    }
+
+    // A discarded part is deleted, or replaced by a new one under another
+    // name; anyone streaming it must not read what is left as video
+    private void discardPartial(String url, AssetCacheIndex.Download download) {
+        markPartFailed(download);
+        store.discardPartial(url);
+    }
+
+    // Interrupted transfers are resumed straight away as long as each attempt
+    // makes progress; anything else is left for the next reconcile.
+    private File fetchToStore(Request request, IntSupplier priority, Ready ready) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            AssetCacheIndex.Download before = store.lookupPartial(request.url);
+            try {
+                return fetchOnce(request, priority, true, ready);
+            } catch (BandwidthScheduler.OutsideWindowException e) {
+                throw e;
+            } catch (IOException e) {
+                AssetCacheIndex.Download after = store.lookupPartial(request.url);
+                boolean progressed = after != null
+                        && (before == null || after.committedBytes > before.committedBytes);
+                if (!progressed || attempt >= RESUME_ATTEMPTS) {
+                    throw e;
+                }
+                Log.w(TAG, "Transfer of " + request.url + " interrupted at " + after.committedBytes
+                        + " bytes, resuming: " + e.getMessage());
+                SystemClock.sleep(RESUME_DELAY_MS * attempt);
+            }
+        }
+    }
+
+    // A journaled part file is continued with a Range request guarded by
+    // If-Range, so the server only sends the tail if the content is still the
+    // same version. Otherwise the cached copy is revalidated with the
+    // validators from the index, and a body is only transferred when the
+    // server reports new content.
+    private File fetchOnce(Request request, IntSupplier priority, boolean allowResume, Ready ready)
+            throws IOException {
+        AssetCacheIndex.Download partial = allowResume ? store.lookupPartial(request.url) : null;
+        if (partial != null && partial.isSegmented()) {
+            CacheBudgetManager.Reservation reservation = admitRemainder(request, partial);
+            try {
+                return transferSegmented(request, priority, partial, ready);
+            } catch (SegmentedDownload.ContentChangedException e) {
+                Log.w(TAG, e.getMessage() + ", starting over");
+                discardPartial(request.url, partial);
+                budget.release(reservation);
+                return fetchOnce(request, priority, false, ready);
+            } finally {
+                budget.release(reservation);
+            }
+        }
+        AssetCacheIndex.Entry cached = partial == null ? store.lookup(request.url) : null;
+
+        okhttp3.Request.Builder builder = new okhttp3.Request.Builder().url(request.url);
+        if (partial != null) {
+            builder.header("Range", "bytes=" + partial.committedBytes + "-");
+            builder.header("If-Range", partial.validator());
+        } else if (cached != null) {
+            if (cached.etag != null) {
+                builder.header("If-None-Match", cached.etag);
+            }
+            if (cached.lastModified != null) {
+                builder.header("If-Modified-Since", cached.lastModified);
+            }
+        }
+
+        try (Response response = client.newCall(builder.build()).execute()) {
+            if (cached != null && isUnchanged(response, cached)) {
+                notifyProgress(request, STATE_CACHED, cached.size, cached.size);
+                return store.objectFile(cached.sha256, cached.extension);
+            }
+
+            ResponseBody body = response.body();
+            if (partial != null && response.code() == 206 && body != null
+                    && resumesAt(response, partial)) {
+                Log.d(TAG, "Resuming " + request.url + " at " + partial.committedBytes + " of "
+                        + partial.totalBytes + " bytes");
+                CacheBudgetManager.Reservation reservation = admitRemainder(request, partial);
+                try {
+                    return transfer(request, priority, body, partial, ready);
+                } finally {
+                    budget.release(reservation);
+                }
+            }
+
+            if (partial != null && (response.code() == 206 || response.code() == 416)) {
+                // The journal no longer describes what the server has, so
+                // fetch the whole thing again
+                Log.w(TAG, "Cannot resume " + request.url + " (" + response.code() + "), starting over");
+                discardPartial(request.url, partial);
+                response.close();
+                return fetchOnce(request, priority, false, ready);
+            }
+
+            if (response.code() != 200) {
+                throw new IOException("Download failed: " + response.code());
+            }
+            if (body == null) {
+                throw new IOException("Download failed: empty body");
+            }
+
+            // 200 to a Range request means the server's copy changed (or it
+            // doesn't do ranges); the new part file replaces the old one
+            CacheBudgetManager.Reservation reservation = admit(request, partial, body.contentLength());
+            try {
+                // beginPartial replaces any journaled part
+                markPartFailed(partial);
+                String etag = response.header("ETag");
+                String lastModified = response.header("Last-Modified");
+                if (shouldSegment(response, body.contentLength(), etag, lastModified)) {
+                    response.close();
+                    AssetCacheIndex.Download fresh = store.beginPartial(request.url, etag, lastModified,
+                            body.contentLength(), SEGMENT_COUNT);
+                    reservation.track(store.partFile(fresh), 0);
+                    return transferSegmented(request, priority, fresh, ready);
+                }
+
+                AssetCacheIndex.Download fresh = store.beginPartial(request.url, etag, lastModified,
+                        body.contentLength(), 0);
+                reservation.track(store.partFile(fresh), 0);
+                try {
+                    return transfer(request, priority, body, fresh, ready);
+                } catch (IOException e) {
+                    if (fresh.validator() == null) {
+                        markPartFailed(fresh);
+                        deleteQuietly(store.partFile(fresh));
+                    }
+                    throw e;
+                }
+            } finally {
+                budget.release(reservation);
+            }
+        }
+    }
+
+    // A resumed part was admitted before a reboot or a floor change at most;
+    // what is left of it has to fit the cache as it is now
+    private CacheBudgetManager.Reservation admitRemainder(Request request, AssetCacheIndex.Download partial)
+            throws IOException {
+        long remaining = partial.totalBytes >= 0 ? partial.totalBytes - partial.committedBytes : -1;
+        CacheBudgetManager.Reservation reservation = admit(request, partial, remaining);
+        reservation.track(store.partFile(partial), partial.committedBytes);
+        return reservation;
+    }
+
+    // Reserves the bytes a transfer still has to write; when the cache can't
+    // take them the journaled part is dropped as well
+    private CacheBudgetManager.Reservation admit(Request request, AssetCacheIndex.Download partial,
+                                                 long expectedBytes) throws IOException {
+        CacheBudgetManager.Reservation reservation = budget.admit(request.url, expectedBytes);
+        if (reservation == null) {
+            discardPartial(request.url, partial);
+            throw new IOException("Cache admission rejected for " + request.url);
+        }
+        return reservation;
+    }
+
+    // Once streamBufferBytes of a video are contiguous on disk, hands out a
+    // URL the player can start on while the rest downloads. Returns true when
+    // offered, so it happens once per transfer.
+    private boolean offerStream(Request request, Ready ready, File part, long totalBytes, long contiguousBytes) {
+        long buffer = streamBufferBytes;
+        if (buffer <= 0 || totalBytes <= 0 || contiguousBytes >= totalBytes
+                || contiguousBytes < buffer || !TYPE_VIDEO.equals(classify(request.fileType))) {
+            return false;
+        }
+        Log.d(TAG, "Streaming " + request.url + " with " + contiguousBytes + " of " + totalBytes + " bytes on disk");
+        ready.onStreamable(new Result(request, TYPE_VIDEO, GrowingFileDataSource.streamUrl(part, totalBytes), null));
+        return true;
+    }
+
+    // Only worth the extra connections for big bodies, and only safe when the
+    // server takes ranges and names the version so every range is of it
+    private static boolean shouldSegment(Response response, long contentLength, String etag,
+                                         String lastModified) {
+        return contentLength >= SEGMENT_THRESHOLD_BYTES
+                && "bytes".equalsIgnoreCase(response.header("Accept-Ranges"))
+                && (etag != null || lastModified != null);
+    }
+
+    // Fetches the ranges into the preallocated part, then verifies the length
+    // and hashes the whole file (ranges land out of order, so the digest
+    // can't be built while streaming) before committing it
+    private File transferSegmented(Request request, IntSupplier priority, AssetCacheIndex.Download download,
+                                   Ready ready) throws IOException {
+        long totalBytes = download.totalBytes;
+        Log.d(TAG, "Fetching " + request.url + " (" + totalBytes + " bytes) as "
+                + download.segmentOffsets.length + " ranges");
+        notifyProgress(request, STATE_DOWNLOADING, download.committedBytes, totalBytes);
+
+        File part = store.partFile(download);
+        AtomicBoolean streamOffered = new AtomicBoolean();
+        SegmentedDownload segmented = new SegmentedDownload(client, store, segmentExecutor,
+                urgentSegmentExecutor, download, bandwidth, priority, (bytes, contiguousBytes) -> {
+                    notifyProgress(request, STATE_DOWNLOADING, bytes, totalBytes);
+                    if (!streamOffered.get() && offerStream(request, ready, part, totalBytes, contiguousBytes)) {
+                        streamOffered.set(true);
+                    }
+                });
+        frontiers.put(download.partName, segmented::contiguousBytes);
+        try {
+            segmented.run();
+        } finally {
+            frontiers.remove(download.partName);
+        }
+
+        if (part.length() != totalBytes) {
+            discardPartial(request.url, download);
+            throw new IOException("Segmented download has " + part.length() + " of " + totalBytes + " bytes");
+        }
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 not available", e);
+        }
+        hashPrefix(part, totalBytes, digest, new byte[BUFFER_SIZE]);
+
+        File file = store.commit(request.url, part, toHex(digest.digest()), request.fileType,
+                download.etag, download.lastModified);
+        partOutcomes.put(download.partName, GrowingFileDataSource.FRONTIER_COMMITTED);
+        notifyProgress(request, STATE_COMPLETED, file.length(), file.length());
+        return file;
+    }
+
+    // 206 whose Content-Range starts at our offset and, when both are known,
+    // agrees on the full length
+    private static boolean resumesAt(Response response, AssetCacheIndex.Download partial) {
+        String contentRange = response.header("Content-Range");
+        if (contentRange == null || !contentRange.startsWith("bytes ")) {
+            return false;
+        }
+        try {
+            String range = contentRange.substring("bytes ".length());
+            int dash = range.indexOf('-');
+            int slash = range.indexOf('/');
+            long start = Long.parseLong(range.substring(0, dash).trim());
+            String total = range.substring(slash + 1).trim();
+            return start == partial.committedBytes
+                    && (partial.totalBytes < 0 || "*".equals(total) || Long.parseLong(total) == partial.totalBytes);
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    // 304, or a server that ignores conditional headers but still reports the
+    // same ETag and size as the stored copy.
+    private static boolean isUnchanged(Response response, AssetCacheIndex.Entry cached) {
+        if (response.code() == 304) {
+            return true;
+        }
+        if (response.code() != 200 || cached.etag == null) {
+            return false;
+        }
+        ResponseBody body = response.body();
+        return cached.etag.equals(response.header("ETag"))
+                && body != null && body.contentLength() == cached.size;
+    }
+
+    // Appends the body to the part file, syncing and journaling the offset
+    // every CHECKPOINT_BYTES (and when the connection drops), then hashes and
+    // commits it into the store. The hash covers bytes from earlier runs too,
+    // so those are read back first.
+    private File transfer(Request request, IntSupplier priority, ResponseBody body,
+                          AssetCacheIndex.Download download, Ready ready) throws IOException {
+        File part = store.partFile(download);
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 not available", e);
+        }
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long bytesDownloaded = hashPrefix(part, download.committedBytes, digest, buffer);
+        long totalBytes = download.totalBytes;
+        long checkpointed = bytesDownloaded;
+        long lastReport = 0;
+        boolean journaled = download.validator() != null;
+        boolean streamOffered = false;
+        AtomicLong written = new AtomicLong(bytesDownloaded);
+
+        notifyProgress(request, STATE_DOWNLOADING, bytesDownloaded, totalBytes);
+        frontiers.put(download.partName, written::get);
+        try (InputStream in = body.byteStream(); FileOutputStream out = new FileOutputStream(part, true)) {
+            try {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    digest.update(buffer, 0, read);
+                    bytesDownloaded += read;
+                    written.set(bytesDownloaded);
+                    bandwidth.acquire(read, priority.getAsInt());
+                    if (!streamOffered) {
+                        streamOffered = offerStream(request, ready, part, totalBytes, bytesDownloaded);
+                    }
+
+                    if (journaled && bytesDownloaded - checkpointed >= CHECKPOINT_BYTES) {
+                        out.getFD().sync();
+                        store.checkpointPartial(request.url, bytesDownloaded);
+                        checkpointed = bytesDownloaded;
+                    }
+
+                    long now = SystemClock.elapsedRealtime();
+                    if (now - lastReport >= PROGRESS_INTERVAL_MS) {
+                        lastReport = now;
+                        notifyProgress(request, STATE_DOWNLOADING, bytesDownloaded, totalBytes);
+                    }
+                }
+                out.getFD().sync();
+            } catch (IOException e) {
+                // Keep what arrived so the next attempt starts from here
+                if (journaled && bytesDownloaded > checkpointed) {
+                    out.getFD().sync();
+                    store.checkpointPartial(request.url, bytesDownloaded);
+                }
+                throw e;
+            }
+        } finally {
+            frontiers.remove(download.partName);
+        }
+
+        if (totalBytes >= 0 && bytesDownloaded != totalBytes) {
+            throw new IOException("Download truncated: " + bytesDownloaded + " of " + totalBytes + " bytes");
+        }
+
+        File file = store.commit(request.url, part, toHex(digest.digest()), request.fileType,
+                download.etag, download.lastModified);
+        partOutcomes.put(download.partName, GrowingFileDataSource.FRONTIER_COMMITTED);
+        notifyProgress(request, STATE_COMPLETED, file.length(), file.length());
+        return file;
+    }
+
+    private static long hashPrefix(File part, long length, MessageDigest digest, byte[] buffer)
+            throws IOException {
+        long hashed = 0;
+        try (InputStream in = new FileInputStream(part)) {
+            int read;
+            while (hashed < length
+                    && (read = in.read(buffer, 0, (int) Math.min(buffer.length, length - hashed))) != -1) {
+                digest.update(buffer, 0, read);
+                hashed += read;
+            }
+        }
+        if (hashed != length) {
+            throw new IOException("Part file shorter than journal: " + hashed + " of " + length + " bytes");
+        }
+        return hashed;
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Could not delete partial download " + file);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format(Locale.US, "%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private void notifyProgress(Request request, String state, long bytesDownloaded, long totalBytes) {
+        if (listener != null) {
+            listener.onAssetProgress(request, state, bytesDownloaded, totalBytes);
+        }
+    }
+}
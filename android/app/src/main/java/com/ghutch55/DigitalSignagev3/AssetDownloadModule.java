@@ -0,0 +1,208 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableType;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Downloads and cache maintenance run in the :sync process (see
+// SignageSyncBinder); this module forwards calls and relays progress.
+public class AssetDownloadModule extends ReactContextBaseJavaModule {
+    private static final String MODULE_NAME = "AssetDownloadModule";
+    private static final String TAG = "AssetDownloadModule";
+    private static final String PROGRESS_EVENT = "AssetDownloadProgress";
+    private static final String READY_EVENT = "AssetReady";
+
+    private final SignageSyncClient sync;
+    private final SignageSyncClient.Listener listener = new SignageSyncClient.Listener() {
+        @Override
+        public void onDownloadProgress(String eventJson) {
+            try {
+                SignageEvents.emit(getReactApplicationContext(), PROGRESS_EVENT,
+                        ReactJson.toMap(new JSONObject(eventJson)));
+            } catch (Exception e) {
+                Log.w(TAG, "Could not relay download progress", e);
+            }
+        }
+    };
+
+    public AssetDownloadModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+        sync = SignageSyncClient.getInstance(reactContext);
+        sync.addListener(listener);
+    }
+
+    @Override
+    public String getName() {
+        return MODULE_NAME;
+    }
+
+    @Override
+    public void invalidate() {
+        super.invalidate();
+        sync.removeListener(listener);
+    }
+
+    // Revalidates every asset with the server (conditional requests), then
+    // drops cached files the list no longer references
+    @ReactMethod
+    public void downloadAssets(String batchId, ReadableArray assets, Promise promise) {
+        reconcile(batchId, assets, true, promise);
+    }
+
+    // Plays whatever is already cached while new URLs are fetched and
+    // cached ones are revalidated in the background
+    @ReactMethod
+    public void reconcileAssets(String batchId, ReadableArray assets, Promise promise) {
+        reconcile(batchId, assets, false, promise);
+    }
+
+    // Every asset is also announced on its own (READY_EVENT, tagged with the
+    // caller's batchId) as soon as it is cached, so playback can start before
+    // the whole list resolves
+    private void reconcile(String batchId, ReadableArray assets, boolean revalidate, Promise promise) {
+        try {
+            sync.downloadAssets(ReactJson.fromArray(assets).toString(), revalidate,
+                    new SignageSyncClient.DownloadCallback() {
+                        @Override
+                        public void onAssetReady(int index, String localAssetJson) {
+                            try {
+                                WritableMap event = Arguments.createMap();
+                                event.putString("batchId", batchId);
+                                event.putInt("index", index);
+                                event.putMap("asset", ReactJson.toMap(new JSONObject(localAssetJson)));
+                                SignageEvents.emit(getReactApplicationContext(), READY_EVENT, event);
+                            } catch (Exception e) {
+                                Log.w(TAG, "Could not relay ready asset", e);
+                            }
+                        }
+
+                        @Override
+                        public void onComplete(String localAssetsJson) {
+                            if (localAssetsJson == null) {
+                                promise.reject("DOWNLOAD_ERROR", "Sync service failed while downloading assets");
+                                return;
+                            }
+                            try {
+                                promise.resolve(ReactJson.toArray(new JSONArray(localAssetsJson)));
+                            } catch (Exception e) {
+                                promise.reject("DOWNLOAD_ERROR", "Error reading downloaded assets: " + e.getMessage());
+                            }
+                        }
+                    });
+        } catch (Exception e) {
+            promise.reject("DOWNLOAD_ERROR", "Error downloading assets: " + e.getMessage());
+        }
+    }
+
+    @ReactMethod
+    public void configureCache(double byteBudget, double freeSpaceFloor, Promise promise) {
+        sync.call(s -> {
+            try {
+                s.configureCache((long) byteBudget, (long) freeSpaceFloor);
+                promise.resolve(null);
+            } catch (Exception e) {
+                promise.reject("CACHE_CONFIG_ERROR", "Error configuring cache: " + e.getMessage());
+            }
+        });
+    }
+
+    // Bytes of a video on disk before the player may start it mid-download
+    @ReactMethod
+    public void configureStreaming(double startBufferBytes, Promise promise) {
+        sync.call(s -> {
+            try {
+                s.configureStreaming((long) startBufferBytes);
+                promise.resolve(null);
+            } catch (Exception e) {
+                promise.reject("STREAMING_CONFIG_ERROR", "Error configuring streaming: " + e.getMessage());
+            }
+        });
+    }
+
+    // How long before a scheduled playlist starts its assets are downloaded
+    @ReactMethod
+    public void configurePrefetch(double horizonMs, Promise promise) {
+        sync.call(s -> {
+            try {
+                s.configurePrefetch((long) horizonMs);
+                promise.resolve(null);
+            } catch (Exception e) {
+                promise.reject("PREFETCH_CONFIG_ERROR", "Error configuring prefetch: " + e.getMessage());
+            }
+        });
+    }
+
+    // Caps the box's download rate and restricts prefetch to off-peak windows
+    @ReactMethod
+    public void configureBandwidth(double bytesPerSecond, String offPeakWindows, Promise promise) {
+        sync.call(s -> {
+            try {
+                s.configureBandwidth((long) bytesPerSecond, offPeakWindows);
+                promise.resolve(null);
+            } catch (Exception e) {
+                promise.reject("BANDWIDTH_CONFIG_ERROR", "Error configuring bandwidth: " + e.getMessage());
+            }
+        });
+    }
+
+    @ReactMethod
+    public void getDownloadMetrics(Promise promise) {
+        sync.call(s -> {
+            try {
+                promise.resolve(ReactJson.toMap(new JSONObject(s.getDownloadMetrics())));
+            } catch (Exception e) {
+                promise.reject("DOWNLOAD_METRICS_ERROR", "Error reading download metrics: " + e.getMessage());
+            }
+        });
+    }
+
+    // Remote URLs of the next scheduled playlist, protected from eviction
+    @ReactMethod
+    public void setScheduledAssets(ReadableArray urls) {
+        List<String> scheduled = new ArrayList<>();
+        for (int i = 0; i < urls.size(); i++) {
+            if (urls.getType(i) == ReadableType.String) {
+                scheduled.add(urls.getString(i));
+            }
+        }
+        sync.setScheduledAssets(scheduled);
+    }
+
+    @ReactMethod
+    public void markAssetPlayed(String localUrl) {
+        sync.call(s -> s.markAssetPlayed(localUrl));
+    }
+
+    @ReactMethod
+    public void getCacheMetrics(Promise promise) {
+        sync.call(s -> {
+            try {
+                promise.resolve(ReactJson.toMap(new JSONObject(s.getCacheMetrics())));
+            } catch (Exception e) {
+                promise.reject("CACHE_METRICS_ERROR", "Error reading cache metrics: " + e.getMessage());
+            }
+        });
+    }
+
+    // Required by NativeEventEmitter on the JS side
+    @ReactMethod
+    public void addListener(String eventName) {
+    }
+
+    @ReactMethod
+    public void removeListeners(double count) {
+    }
+}
@@ -0,0 +1,301 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.util.Log;
+
+import android.system.ErrnoException;
+import android.system.Os;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+public class AssetStore {
+    private static final String TAG = "AssetStore";
+    private static final String OBJECTS_DIR_NAME = "objects";
+    private static final String TEMP_DIR_NAME = "tmp";
+    private static final String PARTIAL_DIR_NAME = "partial";
+    private static final String PART_SUFFIX = ".part";
+    private static final String MANIFEST_FILE_NAME = "manifest.json";
+    private static final long STALE_TEMP_AGE_MS = 60 * 60 * 1000; // 1 hour
+    private static final long ABANDONED_PARTIAL_AGE_MS = 7L * 24 * 60 * 60 * 1000; // 1 week
+
+    private final File cacheDir;
+    private final File objectsDir;
+    private final File tempDir;
+    private final File partialDir;
+    private final AssetCacheIndex index;
+
+    public AssetStore(File cacheDir, AssetCacheIndex index) {
+        this.cacheDir = cacheDir;
+        this.objectsDir = new File(cacheDir, OBJECTS_DIR_NAME);
+        this.tempDir = new File(cacheDir, TEMP_DIR_NAME);
+        this.partialDir = new File(cacheDir, PARTIAL_DIR_NAME);
+        this.index = index;
+    }
+
+    public AssetCacheIndex getIndex() {
+        return index;
+    }
+
+    public File objectFile(String sha256, String extension) {
+        return new File(objectsDir, sha256 + "." + extension);
+    }
+
+    // Returns the cached entry for a URL, dropping the index row if the blob
+    // behind it has gone missing (e.g. the directory was cleared from JS).
+    public AssetCacheIndex.Entry lookup(String url) {
+        AssetCacheIndex.Entry entry = index.findByUrl(url);
+        if (entry == null) {
+            return null;
+        }
+
+        File file = objectFile(entry.sha256, entry.extension);
+        if (!file.exists() || file.length() != entry.size) {
+            Log.w(TAG, "Cached object missing for " + url + ", forgetting it");
+            index.removeObject(entry.sha256);
+            return null;
+        }
+        return entry;
+    }
+
+    public File partFile(AssetCacheIndex.Download download) {
+        return new File(partialDir, download.partName);
+    }
+
+    // The journaled transfer for a URL, or null. The part file is cut back to
+    // the last committed offset: bytes written after the final checkpoint may
+    // not have survived a power cut intact, so they are fetched again.
+    public synchronized AssetCacheIndex.Download lookupPartial(String url) {
+        AssetCacheIndex.Download download = index.findDownload(url);
+        if (download == null) {
+            return null;
+        }
+
+        File part = partFile(download);
+        if (download.isSegmented()) {
+            // Preallocated; the offsets say which bytes of each range are good
+            if (part.isFile() && part.length() == download.totalBytes) {
+                return download;
+            }
+            Log.w(TAG, "Segmented part of " + url + " has the wrong size, starting over");
+            discardPartial(url);
+            return null;
+        }
+        if (!part.isFile() || part.length() < download.committedBytes) {
+            Log.w(TAG, "Partial download of " + url + " is missing or short, starting over");
+            discardPartial(url);
+            return null;
+        }
+        if (part.length() > download.committedBytes) {
+            try (RandomAccessFile file = new RandomAccessFile(part, "rw")) {
+                file.setLength(download.committedBytes);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not trim partial download of " + url, e);
+                discardPartial(url);
+                return null;
+            }
+        }
+        return download;
+    }
+
+    // Starts a fresh part file for a URL, replacing any earlier one. Only
+    // responses with a validator are journaled; without one a resumed Range
+    // could splice two different versions together, so the part is discarded
+    // if the transfer fails. A segmented part (segmentCount > 0) is
+    // preallocated to its full length up front.
+    public synchronized AssetCacheIndex.Download beginPartial(String url, String etag, String lastModified,
+                                                              long totalBytes, int segmentCount) throws IOException {
+        ensureDirectory(partialDir);
+        discardPartial(url);
+
+        AssetCacheIndex.Download download = new AssetCacheIndex.Download(url,
+                UUID.randomUUID().toString() + PART_SUFFIX, etag, lastModified, totalBytes, 0,
+                segmentCount > 0 ? new long[segmentCount] : null);
+        File part = partFile(download);
+        if (!part.createNewFile()) {
+            throw new IOException("Could not create " + part);
+        }
+        if (download.isSegmented()) {
+            preallocate(part, totalBytes);
+        }
+        if (download.validator() != null) {
+            index.putDownload(download);
+        }
+        return download;
+    }
+
+    // Called after the part file has been synced up to committedBytes
+    public void checkpointPartial(String url, long committedBytes) {
+        index.updateDownloadOffset(url, committedBytes);
+    }
+
+    public void checkpointSegments(String url, long[] segmentOffsets) {
+        index.updateDownloadSegments(url, segmentOffsets);
+    }
+
+    public synchronized void discardPartial(String url) {
+        AssetCacheIndex.Download download = index.findDownload(url);
+        if (download != null) {
+            deleteQuietly(partFile(download));
+            index.removeDownload(url);
+        }
+    }
+
+    // Moves a finished download into the store under its content hash with a
+    // single rename, so a blob is never visible half-written. If the same bytes
+    // are already stored (another URL, or a re-upload) the part file is
+    // discarded and the URL simply points at the existing blob.
+    public synchronized File commit(String url, File temp, String sha256, String extension,
+                                    String etag, String lastModified) throws IOException {
+        ensureDirectory(objectsDir);
+
+        String storedExtension = index.findObjectExtension(sha256);
+        File target = objectFile(sha256, storedExtension != null ? storedExtension : normalize(extension));
+        long size = temp.length();
+
+        if (storedExtension != null && target.exists() && target.length() == size) {
+            if (!temp.delete()) {
+                Log.w(TAG, "Could not delete duplicate download " + temp);
+            }
+            Log.d(TAG, "Deduplicated " + url + " onto existing object " + sha256);
+        } else {
+            if (!temp.renameTo(target)) {
+                throw new IOException("Could not move download into cache: " + target);
+            }
+            index.putObject(sha256, normalize(extension), size);
+        }
+
+        index.putAsset(url, sha256, etag, lastModified, size);
+        index.removeDownload(url);
+        return target;
+    }
+
+    // Deletes anything in the cache directory the index doesn't know about
+    // (files from the old random-name layout, abandoned temp and part files,
+    // which never include a journaled transfer). Returns
+    // the bytes reclaimed. Indexed blobs are left to CacheBudgetManager.
+    public synchronized long sweepStrayFiles() {
+        Set<String> knownFiles = new HashSet<>();
+        for (Map.Entry<String, String> object : index.listObjects().entrySet()) {
+            knownFiles.add(objectFile(object.getKey(), object.getValue()).getName());
+        }
+
+        long reclaimed = 0;
+        File[] objectFiles = objectsDir.listFiles();
+        if (objectFiles != null) {
+            for (File file : objectFiles) {
+                if (!knownFiles.contains(file.getName())) {
+                    reclaimed += deleteQuietly(file);
+                }
+            }
+        }
+
+        File[] rootFiles = cacheDir.listFiles();
+        if (rootFiles != null) {
+            for (File file : rootFiles) {
+                if (file.isFile() && !MANIFEST_FILE_NAME.equals(file.getName())) {
+                    reclaimed += deleteQuietly(file);
+                }
+            }
+        }
+
+        File[] tempFiles = tempDir.listFiles();
+        if (tempFiles != null) {
+            long cutoff = System.currentTimeMillis() - STALE_TEMP_AGE_MS;
+            for (File file : tempFiles) {
+                if (file.lastModified() < cutoff) {
+                    reclaimed += deleteQuietly(file);
+                }
+            }
+        }
+
+        for (String partName : index.removeDownloadsUpdatedBefore(
+                System.currentTimeMillis() - ABANDONED_PARTIAL_AGE_MS)) {
+            reclaimed += deleteQuietly(new File(partialDir, partName));
+        }
+        Set<String> journaledParts = index.listDownloadParts();
+        File[] partFiles = partialDir.listFiles();
+        if (partFiles != null) {
+            long cutoff = System.currentTimeMillis() - STALE_TEMP_AGE_MS;
+            for (File file : partFiles) {
+                if (!journaledParts.contains(file.getName()) && file.lastModified() < cutoff) {
+                    reclaimed += deleteQuietly(file);
+                }
+            }
+        }
+
+        Log.d(TAG, "Stray file sweep reclaimed " + reclaimed + " bytes");
+        return reclaimed;
+    }
+
+    // Space taken by part files, journaled or still being written
+    public long partialBytes() {
+        long bytes = 0;
+        File[] partFiles = partialDir.listFiles();
+        if (partFiles != null) {
+            for (File file : partFiles) {
+                bytes += file.length();
+            }
+        }
+        return bytes;
+    }
+
+    public synchronized long evict(AssetCacheIndex.StoredObject object) {
+        long reclaimed = deleteQuietly(objectFile(object.sha256, object.extension));
+        index.removeObject(object.sha256);
+        return reclaimed;
+    }
+
+    public File getCacheDir() {
+        return cacheDir;
+    }
+
+    // Content hash of a file:// URL handed out by this store, or null for
+    // anything else (web assets, legacy paths)
+    public static String shaFromLocalUrl(String localUrl) {
+        if (localUrl == null) {
+            return null;
+        }
+        String name = localUrl.substring(localUrl.lastIndexOf('/') + 1);
+        int dot = name.indexOf('.');
+        String sha256 = dot > 0 ? name.substring(0, dot) : name;
+        return sha256.matches("[0-9a-f]{64}") ? sha256 : null;
+    }
+
+    private static long deleteQuietly(File file) {
+        long length = file.length();
+        if (file.delete()) {
+            return length;
+        }
+        Log.w(TAG, "Could not delete " + file);
+        return 0;
+    }
+
+    // Reserves the blocks so the transfer can't run out of space halfway;
+    // falls back to a sparse file where fallocate isn't supported
+    private static void preallocate(File file, long length) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            try {
+                Os.posix_fallocate(raf.getFD(), 0, length);
+            } catch (ErrnoException e) {
+                Log.w(TAG, "fallocate failed for " + file + ": " + e.getMessage());
+            }
+            raf.setLength(length);
+        }
+    }
+
+    private static String normalize(String extension) {
+        return extension == null ? "bin" : extension.toLowerCase(Locale.US);
+    }
+
+    private static void ensureDirectory(File dir) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Could not create directory " + dir);
+        }
+    }
+}
@@ -1,33 +1,47 @@
 package com.ghutch55.DigitalSignagev3;
 
+import android.app.ActivityManager;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
 import android.app.Service;
 import android.content.Intent;
+import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.Process;
 import android.util.Log;
 
+import java.util.List;
+
+// Foreground service in the :sync process. It hosts SignageSyncBinder, which
+// does all polling, downloading and cache maintenance for the UI process, and
+// the playback watchdog that relaunches the UI when it stops rendering.
 public class AutoStartService extends Service {
     private static final String TAG = "AutoStartService";
-    private static final long RESTART_DELAY = 30000; // 30 seconds
+    private static final String CHANNEL_ID = "signage_sync";
+    private static final int NOTIFICATION_ID = 1;
     private Handler handler;
-    private Runnable restartRunnable;
+    private PlaybackWatchdog watchdog;
+    private SignageSyncBinder binder;
 
     @Override
     public void onCreate() {
         super.onCreate();
         Log.d(TAG, "AutoStartService created");
         handler = new Handler();
+        watchdog = new PlaybackWatchdog(this, handler, this::relaunchSignageApp);
+        binder = new SignageSyncBinder(this);
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         Log.d(TAG, "AutoStartService started");
+        startForeground(NOTIFICATION_ID, buildNotification());
 
-        // Start the signage app immediately
-        startSignageApp();
-
-        // Set up periodic restart (optional - you can remove this if not needed)
-        setupPeriodicRestart();
+        // The app itself is launched by BootOrchestrator (or the user); from
+        // here on relaunch only if the player stops rendering assets
+        watchdog.start();
 
         // Return START_STICKY so the service restarts if killed
         return START_STICKY;
@@ -38,47 +52,67 @@ public class AutoStartService extends Service {
         super.onDestroy();
         Log.d(TAG, "AutoStartService destroyed");
 
-        if (handler != null && restartRunnable != null) {
-            handler.removeCallbacks(restartRunnable);
+        if (watchdog != null) {
+            watchdog.stop();
+        }
+        if (binder != null) {
+            binder.shutdown();
         }
     }
 
     @Override
     public IBinder onBind(Intent intent) {
-        return null; // We don't provide binding
+        return binder;
+    }
+
+    private Notification buildNotification() {
+        Notification.Builder builder;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                    "Content sync", NotificationManager.IMPORTANCE_LOW);
+            channel.setShowBadge(false);
+            getSystemService(NotificationManager.class).createNotificationChannel(channel);
+            builder = new Notification.Builder(this, CHANNEL_ID);
+        } else {
+            builder = new Notification.Builder(this);
+        }
+        return builder
+                .setSmallIcon(getApplicationInfo().icon)
+                .setContentTitle(getApplicationInfo().loadLabel(getPackageManager()))
+                .setContentText("Keeping signage content up to date")
+                .setOngoing(true)
+                .build();
     }
 
-    private void startSignageApp() {
+    // A stalled UI may be hung rather than gone, and an intent to the
+    // running activity would only reach its stuck main thread, so the UI
+    // process is killed first and the activity started in a fresh task
+    private void relaunchSignageApp() {
+        killUiProcess();
         try {
             Intent signageIntent = new Intent(this, MainActivity.class);
             signageIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK |
-                    Intent.FLAG_ACTIVITY_CLEAR_TOP |
-                    Intent.FLAG_ACTIVITY_SINGLE_TOP);
+                    Intent.FLAG_ACTIVITY_CLEAR_TASK);
             startActivity(signageIntent);
-            Log.d(TAG, "Started signage app from service");
+            Log.d(TAG, "Relaunched signage app from service");
         } catch (Exception e) {
-            Log.e(TAG, "Failed to start signage app from service", e);
+            Log.e(TAG, "Failed to relaunch signage app from service", e);
         }
     }
 
-    private void setupPeriodicRestart() {
-        // Cancel any existing restart timer
-        if (restartRunnable != null) {
-            handler.removeCallbacks(restartRunnable);
+    // Same uid, so this process may kill the main one
+    private void killUiProcess() {
+        ActivityManager activityManager = (ActivityManager) getSystemService(ACTIVITY_SERVICE);
+        List<ActivityManager.RunningAppProcessInfo> processes =
+                activityManager != null ? activityManager.getRunningAppProcesses() : null;
+        if (processes == null) {
+            return;
         }
-
-        restartRunnable = new Runnable() {
-            @Override
-            public void run() {
-                Log.d(TAG, "Periodic restart triggered");
-                startSignageApp();
-
-                // Schedule next restart
-                handler.postDelayed(this, RESTART_DELAY);
+        for (ActivityManager.RunningAppProcessInfo info : processes) {
+            if (getPackageName().equals(info.processName)) {
+                Log.w(TAG, "Killing UI process " + info.pid);
+                Process.killProcess(info.pid);
             }
-        };
-
-        // Schedule first restart
-        handler.postDelayed(restartRunnable, RESTART_DELAY);
+        }
     }
 }
\ No newline at end of file
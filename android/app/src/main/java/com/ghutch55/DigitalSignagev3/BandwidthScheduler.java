@@ -0,0 +1,205 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.os.Bundle;
+import android.os.SystemClock;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+// Shares the store's uplink with everything else on it (POS terminals): a
+// token bucket caps the box's total download rate, background work only
+// runs inside the configured off-peak windows, and while an urgent
+// transfer runs every other transfer holds off so it gets the bandwidth.
+// Every transfer loop calls acquire() for each chunk it reads.
+public class BandwidthScheduler {
+    // Longest a non-urgent read holds off for an urgent one; a chunk then
+    // goes through anyway so the server doesn't time the connection out
+    private static final long MAX_PREEMPT_WAIT_MS = 10000;
+    private static final int THROUGHPUT_WINDOW_SECONDS = 10;
+    private static final long DAY_SECONDS = 24 * 60 * 60;
+
+    // Thrown to a background transfer when its off-peak window has closed;
+    // what it wrote so far is journaled and resumed in the next window
+    public static class OutsideWindowException extends IOException {
+        public OutsideWindowException(String message) {
+            super(message);
+        }
+    }
+
+    private long bytesPerSecond;
+    private double tokens;
+    private long lastRefill = SystemClock.elapsedRealtime();
+    // Daily windows as {startSecond, endSecond} of the local day; an end
+    // before the start wraps past midnight. None means always off-peak.
+    private int[][] offPeakWindows = new int[0][];
+    private String offPeakSpec = "";
+    private int urgentActive;
+
+    private final long[] bytesByPriority = new long[3];
+    private final long[] throughputSeconds = new long[THROUGHPUT_WINDOW_SECONDS];
+    private final long[] throughputBytes = new long[THROUGHPUT_WINDOW_SECONDS];
+
+    // 0 bytesPerSecond removes the cap; windows as "HH:MM-HH:MM" separated
+    // by commas, empty for no restriction
+    public synchronized void configure(long bytesPerSecond, String offPeakWindows) {
+        this.offPeakWindows = parseWindows(offPeakWindows);
+        this.offPeakSpec = offPeakWindows != null ? offPeakWindows.trim() : "";
+        this.bytesPerSecond = Math.max(0, bytesPerSecond);
+        this.tokens = Math.min(tokens, this.bytesPerSecond);
+        notifyAll();
+    }
+
+    public synchronized boolean isOffPeak(long now) {
+        if (offPeakWindows.length == 0) {
+            return true;
+        }
+        int second = secondOfDay(now);
+        for (int[] window : offPeakWindows) {
+            if (contains(window, second)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 0 when inside a window already
+    public synchronized long millisUntilOffPeak(long now) {
+        if (isOffPeak(now)) {
+            return 0;
+        }
+        int second = secondOfDay(now);
+        long soonest = Long.MAX_VALUE;
+        for (int[] window : offPeakWindows) {
+            long wait = window[0] - second;
+            if (wait <= 0) {
+                wait += DAY_SECONDS;
+            }
+            soonest = Math.min(soonest, wait);
+        }
+        // Window starts are on whole seconds; land just after one
+        return soonest * 1000 - (now % 1000) + 1;
+    }
+
+    public synchronized void beginUrgent() {
+        urgentActive++;
+    }
+
+    public synchronized void endUrgent() {
+        urgentActive--;
+        notifyAll();
+    }
+
+    public void acquire(int bytes, int priority) throws IOException {
+        if (priority == AssetDownloadEngine.PRIORITY_BACKGROUND && !isOffPeak(System.currentTimeMillis())) {
+            throw new OutsideWindowException("Off-peak window closed");
+        }
+
+        long sleepMs = 0;
+        synchronized (this) {
+            try {
+                if (priority != AssetDownloadEngine.PRIORITY_URGENT) {
+                    long deadline = SystemClock.elapsedRealtime() + MAX_PREEMPT_WAIT_MS;
+                    long remaining;
+                    while (urgentActive > 0 && (remaining = deadline - SystemClock.elapsedRealtime()) > 0) {
+                        wait(remaining);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for bandwidth");
+            }
+
+            if (bytesPerSecond > 0) {
+                long now = SystemClock.elapsedRealtime();
+                tokens = Math.min(bytesPerSecond, tokens + (now - lastRefill) * bytesPerSecond / 1000.0);
+                lastRefill = now;
+                // Borrowing below zero makes concurrent readers queue up
+                // behind each other's debt, so together they stay at the rate
+                tokens -= bytes;
+                if (tokens < 0) {
+                    sleepMs = (long) Math.ceil(-tokens * 1000 / bytesPerSecond);
+                }
+            }
+            record(bytes, priority);
+        }
+
+        if (sleepMs > 0) {
+            try {
+                Thread.sleep(sleepMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while rate limited");
+            }
+        }
+    }
+
+    public synchronized Bundle getMetrics() {
+        Bundle metrics = new Bundle();
+        metrics.putDouble("rateLimitBytesPerSec", bytesPerSecond);
+        metrics.putString("offPeakWindows", offPeakSpec);
+        metrics.putBoolean("offPeakNow", isOffPeak(System.currentTimeMillis()));
+        metrics.putInt("urgentActive", urgentActive);
+        metrics.putDouble("throughputBytesPerSec", throughput());
+        metrics.putDouble("urgentBytes", bytesByPriority[AssetDownloadEngine.PRIORITY_URGENT]);
+        metrics.putDouble("normalBytes", bytesByPriority[AssetDownloadEngine.PRIORITY_NORMAL]);
+        metrics.putDouble("backgroundBytes", bytesByPriority[AssetDownloadEngine.PRIORITY_BACKGROUND]);
+        return metrics;
+    }
+
+    private void record(int bytes, int priority) {
+        bytesByPriority[priority] += bytes;
+        long second = SystemClock.elapsedRealtime() / 1000;
+        int slot = (int) (second % THROUGHPUT_WINDOW_SECONDS);
+        if (throughputSeconds[slot] != second) {
+            throughputSeconds[slot] = second;
+            throughputBytes[slot] = 0;
+        }
+        throughputBytes[slot] += bytes;
+    }
+
+    // Average over the last full THROUGHPUT_WINDOW_SECONDS seconds
+    private double throughput() {
+        long current = SystemClock.elapsedRealtime() / 1000;
+        long total = 0;
+        for (int i = 0; i < THROUGHPUT_WINDOW_SECONDS; i++) {
+            long age = current - throughputSeconds[i];
+            if (age >= 1 && age <= THROUGHPUT_WINDOW_SECONDS) {
+                total += throughputBytes[i];
+            }
+        }
+        return total / (double) THROUGHPUT_WINDOW_SECONDS;
+    }
+
+    private static boolean contains(int[] window, int second) {
+        return window[0] <= window[1]
+                ? second >= window[0] && second < window[1]
+                : second >= window[0] || second < window[1];
+    }
+
+    private static int secondOfDay(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        return calendar.get(Calendar.HOUR_OF_DAY) * 3600 + calendar.get(Calendar.MINUTE) * 60
+                + calendar.get(Calendar.SECOND);
+    }
+
+    static int[][] parseWindows(String spec) {
+        List<int[]> windows = new ArrayList<>();
+        if (spec == null || spec.trim().isEmpty()) {
+            return new int[0][];
+        }
+        for (String token : spec.split(",")) {
+            String[] bounds = token.trim().split("-");
+            int start = bounds.length == 2 ? PlaylistModel.parseTimeOfDay(bounds[0]) : -1;
+            int end = bounds.length == 2 ? PlaylistModel.parseTimeOfDay(bounds[1]) : -1;
+            if (start < 0 || end < 0 || start >= DAY_SECONDS || end > DAY_SECONDS || start == end) {
+                throw new IllegalArgumentException("Invalid off-peak window: " + token.trim());
+            }
+            windows.add(new int[]{start, end});
+        }
+        return windows.toArray(new int[0][]);
+    }
+}
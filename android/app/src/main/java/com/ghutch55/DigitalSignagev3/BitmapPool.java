@@ -0,0 +1,60 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Free mutable bitmaps kept for BitmapFactory.Options.inBitmap, so decoding
+// a slide after warm-up reuses memory instead of allocating a new frame.
+// Not thread-safe; owned by the player's decode thread.
+public class BitmapPool {
+    private final long maxBytes;
+    private final List<Bitmap> free = new ArrayList<>();
+    private long pooledBytes;
+
+    public BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    // Smallest pooled bitmap that can hold `bytes`, or null
+    public Bitmap get(int bytes) {
+        Bitmap best = null;
+        for (Bitmap bitmap : free) {
+            if (bitmap.getAllocationByteCount() >= bytes
+                    && (best == null || bitmap.getAllocationByteCount() < best.getAllocationByteCount())) {
+                best = bitmap;
+            }
+        }
+        if (best != null) {
+            free.remove(best);
+            pooledBytes -= best.getAllocationByteCount();
+        }
+        return best;
+    }
+
+    public void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        free.add(bitmap);
+        pooledBytes += bitmap.getAllocationByteCount();
+
+        // Over budget: drop the smallest first, they are the least reusable
+        while (pooledBytes > maxBytes && !free.isEmpty()) {
+            Bitmap smallest = free.get(0);
+            for (Bitmap candidate : free) {
+                if (candidate.getAllocationByteCount() < smallest.getAllocationByteCount()) {
+                    smallest = candidate;
+                }
+            }
+            free.remove(smallest);
+            pooledBytes -= smallest.getAllocationByteCount();
+        }
+    }
+
+    public void clear() {
+        free.clear();
+        pooledBytes = 0;
+    }
+}
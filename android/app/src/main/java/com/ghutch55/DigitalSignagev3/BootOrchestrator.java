@@ -0,0 +1,104 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.hardware.display.DisplayManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.os.UserManager;
+import android.util.Log;
+import android.view.Display;
+
+import java.io.File;
+
+// Launches MainActivity as soon as the panel is on and app storage is
+// unlocked, instead of after a fixed sleep. The cache index and the
+// connection to the signage server are warmed by the :sync process, which
+// owns both and is started alongside (see SignageSyncBinder).
+public class BootOrchestrator {
+    private static final String TAG = "BootOrchestrator";
+    private static final long READY_POLL_MS = 250;
+    // Launch anyway after this; the receiver's async window is limited
+    private static final long MAX_WAIT_MS = 20000;
+
+    private final Context context;
+    private final Handler handler;
+
+    private BroadcastReceiver.PendingResult pendingResult;
+    private long startedAt;
+    private boolean displayReady;
+    private boolean storageReady;
+
+    public BootOrchestrator(Context context) {
+        this.context = context.getApplicationContext();
+
+        HandlerThread thread = new HandlerThread("boot-orchestrator");
+        thread.start();
+        this.handler = new Handler(thread.getLooper());
+    }
+
+    // `pendingResult` comes from goAsync() and is finished once the activity is launched
+    public void start(BroadcastReceiver.PendingResult pendingResult) {
+        this.pendingResult = pendingResult;
+        startedAt = SystemClock.elapsedRealtime();
+        BootTimings.begin(context);
+        handler.post(this::waitForReadiness);
+    }
+
+    private void waitForReadiness() {
+        if (!displayReady && isDisplayOn()) {
+            displayReady = true;
+            BootTimings.mark(context, BootTimings.DISPLAY_READY);
+        }
+        if (!storageReady && isStorageReady()) {
+            storageReady = true;
+            BootTimings.mark(context, BootTimings.STORAGE_READY);
+        }
+
+        long waited = SystemClock.elapsedRealtime() - startedAt;
+        if ((displayReady && storageReady) || waited >= MAX_WAIT_MS) {
+            if (!displayReady || !storageReady) {
+                Log.w(TAG, "Launching after " + waited + " ms without readiness (display: "
+                        + displayReady + ", storage: " + storageReady + ")");
+            }
+            launch();
+            return;
+        }
+        handler.postDelayed(this::waitForReadiness, READY_POLL_MS);
+    }
+
+    private void launch() {
+        try {
+            Intent launchIntent = new Intent(context, MainActivity.class);
+            launchIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK |
+                    Intent.FLAG_ACTIVITY_CLEAR_TASK |
+                    Intent.FLAG_ACTIVITY_CLEAR_TOP);
+            context.startActivity(launchIntent);
+            BootTimings.mark(context, BootTimings.LAUNCHED);
+            Log.d(TAG, "Digital Signage app started " + (SystemClock.elapsedRealtime() - startedAt)
+                    + " ms after boot broadcast");
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to start app on boot", e);
+        } finally {
+            pendingResult.finish();
+            handler.getLooper().quitSafely();
+        }
+    }
+
+    private boolean isDisplayOn() {
+        DisplayManager displayManager = (DisplayManager) context.getSystemService(Context.DISPLAY_SERVICE);
+        Display display = displayManager != null ? displayManager.getDisplay(Display.DEFAULT_DISPLAY) : null;
+        return display != null && display.getState() == Display.STATE_ON;
+    }
+
+    private boolean isStorageReady() {
+        UserManager userManager = (UserManager) context.getSystemService(Context.USER_SERVICE);
+        if (userManager != null && !userManager.isUserUnlocked()) {
+            return false;
+        }
+        File filesDir = context.getFilesDir();
+        return filesDir != null && filesDir.canWrite();
+    }
+}
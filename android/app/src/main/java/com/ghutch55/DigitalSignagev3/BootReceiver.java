@@ -24,25 +24,8 @@ public class BootReceiver extends BroadcastReceiver {
             Intent serviceIntent = new Intent(context, AutoStartService.class);
             context.startForegroundService(serviceIntent);
 
-            // Also directly start the app with a delay
-            new Thread(() -> {
-                try {
-                    Thread.sleep(10000); // 10 second delay for boot
-
-                    Intent launchIntent = new Intent(context, MainActivity.class);
-                    launchIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK |
-                            Intent.FLAG_ACTIVITY_CLEAR_TASK |
-                            Intent.FLAG_ACTIVITY_CLEAR_TOP);
-
-                    context.startActivity(launchIntent);
-                    Log.d(TAG, "Digital Signage app started successfully from boot");
-
-                } catch (InterruptedException e) {
-                    Log.e(TAG, "Boot delay interrupted", e);
-                } catch (Exception e) {
-                    Log.e(TAG, "Failed to start app on boot", e);
-                }
-            }).start();
+            // Launch as soon as the display and storage are ready
+            new BootOrchestrator(context).start(goAsync());
         }
     }
 }
\ No newline at end of file
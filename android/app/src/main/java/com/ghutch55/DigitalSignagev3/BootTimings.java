@@ -0,0 +1,110 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.provider.Settings;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// Milestones of the last few boots on this box, in milliseconds since boot
+// (elapsedRealtime), from the boot broadcast to the first rendered asset.
+public final class BootTimings {
+    private static final String TAG = "BootTimings";
+    private static final String PREFS_NAME = "signage_boot";
+    private static final String KEY_HISTORY = "history";
+    private static final int MAX_HISTORY = 10;
+
+    public static final String BOOT_COUNT = "bootCount";
+    public static final String RECEIVED = "receivedMs";
+    public static final String DISPLAY_READY = "displayReadyMs";
+    public static final String STORAGE_READY = "storageReadyMs";
+    public static final String LAUNCHED = "launchedMs";
+    public static final String INDEX_WARM = "indexWarmMs";
+    public static final String NETWORK_WARM = "networkWarmMs";
+    public static final String FIRST_FRAME = "firstFrameMs";
+
+    // Heartbeats arrive for every asset; only the first one per process matters
+    private static volatile boolean firstFrameRecorded;
+
+    private BootTimings() {
+    }
+
+    // Starts a record for the current boot, newest first
+    public static synchronized void begin(Context context) {
+        try {
+            JSONObject record = new JSONObject();
+            record.put(BOOT_COUNT, bootCount(context));
+            record.put(RECEIVED, SystemClock.elapsedRealtime());
+
+            JSONArray history = history(context);
+            JSONArray updated = new JSONArray();
+            updated.put(record);
+            for (int i = 0; i < history.length() && updated.length() < MAX_HISTORY; i++) {
+                updated.put(history.get(i));
+            }
+            save(context, updated);
+        } catch (JSONException e) {
+            Log.w(TAG, "Could not start boot record", e);
+        }
+    }
+
+    // Records `stage` once, and only while the current boot's record is open
+    public static void mark(Context context, String stage) {
+        mark(context, stage, SystemClock.elapsedRealtime());
+    }
+
+    // For milestones reached in the :sync process, which must not write
+    // these preferences itself; `at` is its elapsedRealtime
+    public static synchronized void mark(Context context, String stage, long at) {
+        try {
+            JSONArray history = history(context);
+            if (history.length() == 0) {
+                return;
+            }
+            JSONObject record = history.getJSONObject(0);
+            if (record.optInt(BOOT_COUNT, -1) != bootCount(context) || record.has(stage)) {
+                return;
+            }
+            record.put(stage, at);
+            save(context, history);
+            Log.d(TAG, stage + " at " + at + " ms after boot");
+        } catch (JSONException e) {
+            Log.w(TAG, "Could not record " + stage, e);
+        }
+    }
+
+    public static void markFirstFrame(Context context) {
+        if (!firstFrameRecorded) {
+            firstFrameRecorded = true;
+            mark(context, FIRST_FRAME);
+        }
+    }
+
+    public static synchronized JSONArray history(Context context) {
+        String json = prefs(context).getString(KEY_HISTORY, null);
+        if (json != null) {
+            try {
+                return new JSONArray(json);
+            } catch (JSONException e) {
+                Log.w(TAG, "Discarding unreadable boot history", e);
+            }
+        }
+        return new JSONArray();
+    }
+
+    private static void save(Context context, JSONArray history) {
+        prefs(context).edit().putString(KEY_HISTORY, history.toString()).apply();
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    private static int bootCount(Context context) {
+        return Settings.Global.getInt(context.getContentResolver(), Settings.Global.BOOT_COUNT, -1);
+    }
+}
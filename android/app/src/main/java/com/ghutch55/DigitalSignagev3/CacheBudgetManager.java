@@ -0,0 +1,265 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.os.StatFs;
+import android.util.Log;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+public class CacheBudgetManager {
+    private static final String TAG = "CacheBudgetManager";
+    private static final String PREFS_NAME = "signage_cache";
+    private static final String KEY_BYTE_BUDGET = "byte_budget";
+    private static final String KEY_FREE_SPACE_FLOOR = "free_space_floor";
+
+    private static final long DEFAULT_FREE_SPACE_FLOOR = 512L * 1024 * 1024; // 512 MB
+    private static final double DEFAULT_BUDGET_FRACTION = 0.5; // of the data partition
+
+    // Space promised to an admitted download. Once the download's part file
+    // is known, whatever it has grown by counts as used space instead, so
+    // only the bytes still to be written stay reserved.
+    public static final class Reservation {
+        private final long bytes;
+        private volatile File part;
+        private volatile long baseBytes;
+
+        private Reservation(long bytes) {
+            this.bytes = bytes;
+        }
+
+        // baseBytes: the part's length when expectedBytes was measured
+        public void track(File part, long baseBytes) {
+            this.baseBytes = baseBytes;
+            this.part = part;
+        }
+
+        long outstanding() {
+            File current = part;
+            long written = current != null ? Math.max(0, current.length() - baseBytes) : 0;
+            return Math.max(0, bytes - written);
+        }
+    }
+
+    private final SharedPreferences prefs;
+    private final AssetStore store;
+
+    private Set<String> activeUrls = Collections.emptySet();
+    private Set<String> scheduledUrls = Collections.emptySet();
+    private Set<String> prefetchUrls = Collections.emptySet();
+
+    private final Set<Reservation> reservations = new HashSet<>();
+
+    private long admissions;
+    private long admissionsOverBudget;
+    private long rejections;
+    private long evictions;
+    private long evictedBytes;
+
+    public CacheBudgetManager(Context context, AssetStore store) {
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.store = store;
+    }
+
+    public synchronized void configure(long byteBudget, long freeSpaceFloor) {
+        prefs.edit()
+                .putLong(KEY_BYTE_BUDGET, byteBudget)
+                .putLong(KEY_FREE_SPACE_FLOOR, freeSpaceFloor)
+                .apply();
+        Log.d(TAG, "Cache budget set to " + byteBudget + " bytes, free space floor " + freeSpaceFloor);
+    }
+
+    public long getByteBudget() {
+        long configured = prefs.getLong(KEY_BYTE_BUDGET, 0);
+        if (configured > 0) {
+            return configured;
+        }
+        return (long) (statFs().getTotalBytes() * DEFAULT_BUDGET_FRACTION);
+    }
+
+    public long getFreeSpaceFloor() {
+        return prefs.getLong(KEY_FREE_SPACE_FLOOR, DEFAULT_FREE_SPACE_FLOOR);
+    }
+
+    // The playlist currently on screen
+    public synchronized void setActiveUrls(Collection<String> urls) {
+        activeUrls = new HashSet<>(urls);
+    }
+
+    // While a new list downloads the old one is still on screen, so both
+    // stay protected until setActiveUrls narrows it to the new one
+    public synchronized void addActiveUrls(Collection<String> urls) {
+        Set<String> union = new HashSet<>(activeUrls);
+        union.addAll(urls);
+        activeUrls = union;
+    }
+
+    // The playlist that will be switched to next
+    public synchronized void setScheduledUrls(Collection<String> urls) {
+        scheduledUrls = new HashSet<>(urls);
+    }
+
+    // Playlists starting within the prefetch horizon: kept from eviction,
+    // but unlike active and scheduled assets never admitted over budget
+    public synchronized void setPrefetchUrls(Collection<String> urls) {
+        prefetchUrls = new HashSet<>(urls);
+    }
+
+    public void markPlayed(String localUrl) {
+        String sha256 = AssetStore.shaFromLocalUrl(localUrl);
+        if (sha256 != null) {
+            store.getIndex().markPlayed(sha256, System.currentTimeMillis());
+        }
+    }
+
+    // Decides whether a download still to write expectedBytes may enter the
+    // cache, evicting least-recently-played unprotected blobs to make room.
+    // Active and scheduled assets are admitted even over budget, but nothing
+    // is admitted that would push free space below the floor. Bytes other
+    // admitted downloads have yet to write count as taken. Returns null when
+    // rejected; otherwise the reservation must be released once the download
+    // commits or fails.
+    public synchronized Reservation admit(String url, long expectedBytes) {
+        if (expectedBytes < 0) {
+            // Unknown length: let it in, enforce() trims afterwards
+            admissions++;
+            return reserve(0);
+        }
+
+        makeRoom(expectedBytes);
+
+        long reserved = reservedBytes();
+        if (statFs().getAvailableBytes() - reserved - expectedBytes < getFreeSpaceFloor()) {
+            rejections++;
+            Log.w(TAG, "Rejected " + url + ": would drop free space below the floor");
+            return null;
+        }
+
+        if (usedBytes() + reserved + expectedBytes > getByteBudget()) {
+            if (!isProtectedUrl(url)) {
+                rejections++;
+                Log.w(TAG, "Rejected " + url + ": cache budget exhausted");
+                return null;
+            }
+            admissionsOverBudget++;
+        }
+
+        admissions++;
+        return reserve(expectedBytes);
+    }
+
+    // Safe to call more than once
+    public synchronized void release(Reservation reservation) {
+        if (reservation != null) {
+            reservations.remove(reservation);
+        }
+    }
+
+    // Brings the cache back within budget and above the free-space floor
+    public synchronized void enforce() {
+        makeRoom(0);
+    }
+
+    public synchronized Bundle getMetrics() {
+        Bundle metrics = new Bundle();
+        metrics.putDouble("byteBudget", getByteBudget());
+        metrics.putDouble("freeSpaceFloor", getFreeSpaceFloor());
+        metrics.putDouble("usedBytes", usedBytes());
+        metrics.putDouble("reservedBytes", reservedBytes());
+        metrics.putDouble("availableBytes", statFs().getAvailableBytes());
+        metrics.putDouble("admissions", admissions);
+        metrics.putDouble("admissionsOverBudget", admissionsOverBudget);
+        metrics.putDouble("rejections", rejections);
+        metrics.putDouble("evictions", evictions);
+        metrics.putDouble("evictedBytes", evictedBytes);
+        return metrics;
+    }
+
+    private void makeRoom(long incomingBytes) {
+        long budget = getByteBudget();
+        long floor = getFreeSpaceFloor();
+        long used = usedBytes();
+        long reserved = reservedBytes();
+        long available = statFs().getAvailableBytes();
+
+        long overBudget = used + reserved + incomingBytes - budget;
+        long underFloor = floor - (available - reserved - incomingBytes);
+        long toFree = Math.max(overBudget, underFloor);
+        if (toFree <= 0) {
+            return;
+        }
+
+        Set<String> protectedObjects = resolveProtectedObjects();
+        for (AssetCacheIndex.StoredObject object : store.getIndex().listObjectsByLastPlayed()) {
+            if (toFree <= 0) {
+                break;
+            }
+            if (protectedObjects.contains(object.sha256)) {
+                continue;
+            }
+
+            // Only space actually freed counts; a file that could not be
+            // deleted still occupies the disk
+            long reclaimed = store.evict(object);
+            toFree -= reclaimed;
+            evictions++;
+            evictedBytes += reclaimed;
+            Log.d(TAG, "Evicted " + object.sha256 + " (" + object.size + " bytes, last played "
+                    + object.lastPlayedAt + ")");
+        }
+
+        if (toFree > 0) {
+            Log.w(TAG, "Cache still " + toFree + " bytes over its limits; everything left is protected");
+        }
+    }
+
+    private Reservation reserve(long bytes) {
+        Reservation reservation = new Reservation(bytes);
+        reservations.add(reservation);
+        return reservation;
+    }
+
+    private long reservedBytes() {
+        long reserved = 0;
+        for (Reservation reservation : reservations) {
+            reserved += reservation.outstanding();
+        }
+        return reserved;
+    }
+
+    // Stored blobs plus the part files of downloads in progress or paused
+    private long usedBytes() {
+        return store.getIndex().totalObjectBytes() + store.partialBytes();
+    }
+
+    private boolean isProtectedUrl(String url) {
+        return activeUrls.contains(url) || scheduledUrls.contains(url);
+    }
+
+    private Set<String> resolveProtectedObjects() {
+        Set<String> objects = new HashSet<>();
+        Set<String> urls = new HashSet<>(activeUrls);
+        urls.addAll(scheduledUrls);
+        urls.addAll(prefetchUrls);
+        for (String url : urls) {
+            AssetCacheIndex.Entry entry = store.getIndex().findByUrl(url);
+            if (entry != null) {
+                objects.add(entry.sha256);
+            }
+        }
+        return objects;
+    }
+
+    private StatFs statFs() {
+        File dir = store.getCacheDir();
+        while (dir != null && !dir.exists()) {
+            dir = dir.getParentFile();
+        }
+        return new StatFs(dir != null ? dir.getPath() : "/data");
+    }
+}
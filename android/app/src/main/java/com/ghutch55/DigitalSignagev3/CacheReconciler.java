@@ -0,0 +1,136 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CacheReconciler {
+    private static final String TAG = "CacheReconciler";
+    // Give the player time to move off the previous playlist before its files go
+    private static final long GC_DELAY_MS = 30000;
+
+    private final AssetStore store;
+    private final CacheBudgetManager budget;
+    private final AssetDownloadEngine engine;
+    private final Handler gcHandler;
+    private Runnable pendingGc;
+    // Bumped per reconcile; only the latest one narrows the active set
+    private final AtomicInteger generation = new AtomicInteger();
+
+    public CacheReconciler(AssetStore store, CacheBudgetManager budget, AssetDownloadEngine engine) {
+        this.store = store;
+        this.budget = budget;
+        this.engine = engine;
+
+        HandlerThread gcThread = new HandlerThread("cache-gc", Process.THREAD_PRIORITY_BACKGROUND);
+        gcThread.start();
+        this.gcHandler = new Handler(gcThread.getLooper());
+    }
+
+    // Diffs the requested assets against the cache index: missing URLs go to
+    // the download engine, and so do cached ones, as conditional requests,
+    // so content replaced on the server under the same URL is picked up.
+    // Without revalidate, cache hits are reported through `ready` straight
+    // away and a changed file replaces them when it lands; with it, nothing
+    // is shown before the server has been asked. Downloads are reported as
+    // they finish.
+    public void reconcile(List<AssetDownloadEngine.Request> requests, boolean revalidate,
+                          AssetDownloadEngine.Ready ready, AssetDownloadEngine.Completion completion) {
+        AssetDownloadEngine.Result[] results = new AssetDownloadEngine.Result[requests.size()];
+        List<AssetDownloadEngine.Request> toDownload = new ArrayList<>();
+        List<Integer> downloadSlots = new ArrayList<>();
+        Set<String> liveUrls = new HashSet<>();
+        int kept = 0;
+
+        for (int i = 0; i < requests.size(); i++) {
+            AssetDownloadEngine.Request request = requests.get(i);
+            liveUrls.add(request.url);
+
+            AssetDownloadEngine.Result cached = revalidate ? null : resolveFromCache(request);
+            if (cached != null) {
+                results[i] = cached;
+                ready.onReady(cached);
+                kept++;
+                if (AssetDownloadEngine.TYPE_WEB.equals(cached.type)) {
+                    continue;
+                }
+            }
+            toDownload.add(request);
+            downloadSlots.add(i);
+        }
+
+        // Downloads for the new list must not evict the one still on
+        // screen, so protect both until the new list has been delivered
+        int reconcileGeneration = generation.incrementAndGet();
+        budget.addActiveUrls(liveUrls);
+
+        Log.d(TAG, "Reconciling " + requests.size() + " assets: " + kept + " shown from cache, "
+                + toDownload.size() + " to fetch or revalidate");
+
+        engine.downloadAll(toDownload, ready, downloaded -> {
+            for (int i = 0; i < downloaded.size(); i++) {
+                AssetDownloadEngine.Result result = downloaded.get(i);
+                // A failed revalidation (offline) keeps the cached copy
+                if (result.isSuccess() || results[downloadSlots.get(i)] == null) {
+                    results[downloadSlots.get(i)] = result;
+                }
+            }
+
+            List<AssetDownloadEngine.Result> ordered = new ArrayList<>(requests.size());
+            for (AssetDownloadEngine.Result result : results) {
+                ordered.add(result);
+            }
+            completion.onComplete(ordered);
+
+            if (reconcileGeneration == generation.get()) {
+                budget.setActiveUrls(liveUrls);
+            }
+            scheduleGarbageCollection();
+        });
+    }
+
+    private AssetDownloadEngine.Result resolveFromCache(AssetDownloadEngine.Request request) {
+        String type = AssetDownloadEngine.classify(request.fileType);
+        if (type == null) {
+            return null;
+        }
+        if (AssetDownloadEngine.TYPE_WEB.equals(type)) {
+            return new AssetDownloadEngine.Result(request, type, request.url, null);
+        }
+
+        AssetCacheIndex.Entry entry = store.lookup(request.url);
+        if (entry == null) {
+            return null;
+        }
+        String localUrl = Uri.fromFile(store.objectFile(entry.sha256, entry.extension)).toString();
+        return new AssetDownloadEngine.Result(request, type, localUrl, null);
+    }
+
+    // Only the latest pass matters, so a newer reconcile replaces a pending one
+    private synchronized void scheduleGarbageCollection() {
+        if (pendingGc != null) {
+            gcHandler.removeCallbacks(pendingGc);
+        }
+        pendingGc = () -> {
+            try {
+                store.sweepStrayFiles();
+                budget.enforce();
+            } catch (Exception e) {
+                Log.e(TAG, "Cache garbage collection failed", e);
+            }
+        };
+        gcHandler.postDelayed(pendingGc, GC_DELAY_MS);
+    }
+
+    public void shutdown() {
+        gcHandler.getLooper().quitSafely();
+    }
+}
@@ -0,0 +1,184 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.Bundle;
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Tracks the default network through ConnectivityManager callbacks instead
+// of probing a server before every load. The latest state is cached, so
+// reads are instant, and changes are pushed to JS as they happen.
+public class ConnectivityModule extends ReactContextBaseJavaModule {
+    private static final String MODULE_NAME = "ConnectivityModule";
+    private static final String TAG = "ConnectivityModule";
+    private static final String CHANGED_EVENT = "ConnectivityChanged";
+
+    // Immutable snapshot of the default network
+    private static final class State {
+        // Has the INTERNET capability: the device treats this as online.
+        // Store LANs that firewall Android's connectivity check never get
+        // VALIDATED, so that is reported alongside rather than required; a
+        // failing playlist poll is what decides the server is unreachable.
+        final boolean connected;
+        final boolean validated;
+        final boolean metered;
+        final String transport;
+        final int downstreamKbps;
+        final int upstreamKbps;
+
+        State(NetworkCapabilities caps) {
+            connected = caps != null && caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+            validated = caps != null && caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+            metered = caps != null && !caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+            transport = transportOf(caps);
+            downstreamKbps = caps != null ? caps.getLinkDownstreamBandwidthKbps() : 0;
+            upstreamKbps = caps != null ? caps.getLinkUpstreamBandwidthKbps() : 0;
+        }
+
+        // Bandwidth estimates jitter constantly; only a halving or doubling
+        // is worth an event
+        boolean differsFrom(State other) {
+            return other == null
+                    || connected != other.connected
+                    || validated != other.validated
+                    || metered != other.metered
+                    || !transport.equals(other.transport)
+                    || downstreamKbps > other.downstreamKbps * 2
+                    || downstreamKbps * 2 < other.downstreamKbps;
+        }
+
+        WritableMap toMap() {
+            WritableMap map = Arguments.createMap();
+            map.putBoolean("connected", connected);
+            map.putBoolean("validated", validated);
+            map.putBoolean("metered", metered);
+            map.putString("transport", transport);
+            map.putInt("downstreamKbps", downstreamKbps);
+            map.putInt("upstreamKbps", upstreamKbps);
+            return map;
+        }
+    }
+
+    private static String transportOf(NetworkCapabilities caps) {
+        if (caps == null) {
+            return "none";
+        } else if (caps.hasTransport(NetworkCapabilities.TRANSPORT_ETHERNET)) {
+            return "ethernet";
+        } else if (caps.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)) {
+            return "wifi";
+        } else if (caps.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) {
+            return "cellular";
+        } else if (caps.hasTransport(NetworkCapabilities.TRANSPORT_VPN)) {
+            return "vpn";
+        }
+        return "other";
+    }
+
+    private final ConnectivityManager connectivity;
+    private final ConnectivityManager.NetworkCallback callback = new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onCapabilitiesChanged(Network network, NetworkCapabilities caps) {
+            update(new State(caps));
+        }
+
+        @Override
+        public void onLost(Network network) {
+            update(new State(null));
+        }
+    };
+
+    private volatile State state;
+    // Last state sent to JS
+    private State emitted;
+    // Other modules in this process following the default network; run on
+    // every update, however small
+    private final List<Runnable> observers = new CopyOnWriteArrayList<>();
+
+    public ConnectivityModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+        connectivity = (ConnectivityManager) reactContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        Network active = connectivity.getActiveNetwork();
+        state = new State(active != null ? connectivity.getNetworkCapabilities(active) : null);
+        emitted = state;
+        try {
+            connectivity.registerDefaultNetworkCallback(callback);
+        } catch (RuntimeException e) {
+            // Too many callbacks registered for this uid; the initial state stays
+            Log.e(TAG, "Could not register network callback", e);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return MODULE_NAME;
+    }
+
+    @Override
+    public void invalidate() {
+        super.invalidate();
+        try {
+            connectivity.unregisterNetworkCallback(callback);
+        } catch (IllegalArgumentException e) {
+            // Never registered
+        }
+    }
+
+    void addObserver(Runnable observer) {
+        observers.add(observer);
+    }
+
+    void removeObserver(Runnable observer) {
+        observers.remove(observer);
+    }
+
+    // Transport and metering of the default network, for the device snapshot
+    Bundle networkInfo() {
+        State current = state;
+        Bundle info = new Bundle();
+        info.putString("transport", current.transport);
+        info.putBoolean("metered", current.metered);
+        return info;
+    }
+
+    private void update(State next) {
+        state = next;
+        for (Runnable observer : observers) {
+            observer.run();
+        }
+        synchronized (this) {
+            if (!next.differsFrom(emitted)) {
+                return;
+            }
+            emitted = next;
+        }
+        Log.d(TAG, "Network " + next.transport + " connected=" + next.connected + " validated=" + next.validated
+                + " metered=" + next.metered + " down=" + next.downstreamKbps + "kbps");
+        SignageEvents.emit(getReactApplicationContext(), CHANGED_EVENT, next.toMap());
+    }
+
+    @ReactMethod
+    public void getState(Promise promise) {
+        promise.resolve(state.toMap());
+    }
+
+    // Required by NativeEventEmitter on the JS side
+    @ReactMethod
+    public void addListener(String eventName) {
+    }
+
+    @ReactMethod
+    public void removeListeners(double count) {
+    }
+}
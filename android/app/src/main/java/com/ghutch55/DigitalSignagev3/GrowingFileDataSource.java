@@ -0,0 +1,185 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.net.Uri;
+import android.os.SystemClock;
+
+import androidx.annotation.OptIn;
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.datasource.BaseDataSource;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+
+// Reads a video straight out of the part file the :sync process is still
+// downloading into. Reads past the download frontier wait for it to move
+// on; once the part is committed (renamed into the store) the open file
+// handle keeps working, so playback never notices the handover.
+@OptIn(markerClass = UnstableApi.class)
+public class GrowingFileDataSource extends BaseDataSource {
+    public static final String SCHEME = "signage-stream";
+    private static final String PARAM_TOTAL = "total";
+    private static final long POLL_MS = 100;
+    // Give up if the frontier doesn't move for this long (download died)
+    private static final long STALL_TIMEOUT_MS = 30000;
+
+    // Frontier states once no transfer is writing the part
+    // Nothing known (yet): the transfer may resume, or the service reconnect
+    public static final long FRONTIER_UNKNOWN = -1;
+    // Abandoned or discarded; whatever is left of the file is not the video
+    public static final long FRONTIER_FAILED = -2;
+    // Renamed into the store complete and verified
+    public static final long FRONTIER_COMMITTED = -3;
+
+    public interface Frontier {
+        // Contiguous bytes of the part file on disk, or one of the
+        // FRONTIER_ states
+        long bytesAvailable(File part);
+    }
+
+    public static class Factory implements DataSource.Factory {
+        private final Frontier frontier;
+
+        public Factory(Frontier frontier) {
+            this.frontier = frontier;
+        }
+
+        @Override
+        public DataSource createDataSource() {
+            return new GrowingFileDataSource(frontier);
+        }
+    }
+
+    private final Frontier frontier;
+    private Uri uri;
+    private File part;
+    private RandomAccessFile file;
+    private long totalBytes;
+    private long position;
+    private long bytesRemaining;
+    private long available;
+    private boolean opened;
+
+    public GrowingFileDataSource(Frontier frontier) {
+        super(false);
+        this.frontier = frontier;
+    }
+
+    public static String streamUrl(File part, long totalBytes) {
+        return new Uri.Builder()
+                .scheme(SCHEME)
+                .encodedAuthority("")
+                .path(part.getAbsolutePath())
+                .appendQueryParameter(PARAM_TOTAL, String.valueOf(totalBytes))
+                .build()
+                .toString();
+    }
+
+    public static boolean isStreamUrl(String url) {
+        return url != null && url.startsWith(SCHEME + ":");
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        uri = dataSpec.uri;
+        String total = uri.getQueryParameter(PARAM_TOTAL);
+        if (uri.getPath() == null || total == null) {
+            throw new IOException("Invalid stream URL: " + uri);
+        }
+        part = new File(uri.getPath());
+        totalBytes = Long.parseLong(total);
+
+        transferInitializing(dataSpec);
+        file = new RandomAccessFile(part, "r");
+        position = dataSpec.position;
+        if (position > totalBytes) {
+            throw new IOException("Position " + position + " beyond " + totalBytes + " bytes");
+        }
+        bytesRemaining = dataSpec.length != C.LENGTH_UNSET
+                ? Math.min(dataSpec.length, totalBytes - position)
+                : totalBytes - position;
+        opened = true;
+        transferStarted(dataSpec);
+        return bytesRemaining;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (bytesRemaining == 0) {
+            return C.RESULT_END_OF_INPUT;
+        }
+
+        awaitFrontier(position + 1);
+        int toRead = (int) Math.min(Math.min(length, bytesRemaining), available - position);
+        file.seek(position);
+        int read = file.read(buffer, offset, toRead);
+        if (read < 0) {
+            throw new IOException("Unexpected end of " + part);
+        }
+        position += read;
+        bytesRemaining -= read;
+        bytesTransferred(read);
+        return read;
+    }
+
+    private void awaitFrontier(long needed) throws IOException {
+        long lastAvailable = available;
+        long stalledSince = SystemClock.elapsedRealtime();
+        while (available < needed) {
+            long downloading = frontier.bytesAvailable(part);
+            if (downloading >= 0) {
+                available = downloading;
+            } else if (downloading == FRONTIER_COMMITTED) {
+                // The handle now points at the finished object
+                available = totalBytes;
+            } else if (downloading == FRONTIER_FAILED) {
+                throw new IOException("Download of " + part.getName() + " failed at " + available + " bytes");
+            }
+            if (available >= needed) {
+                return;
+            }
+
+            long now = SystemClock.elapsedRealtime();
+            if (available > lastAvailable) {
+                lastAvailable = available;
+                stalledSince = now;
+            } else if (now - stalledSince > STALL_TIMEOUT_MS) {
+                throw new IOException("Download of " + part.getName() + " stalled at " + available + " bytes");
+            }
+            try {
+                Thread.sleep(POLL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for " + part.getName());
+            }
+        }
+    }
+
+    @Override
+    public Uri getUri() {
+        return uri;
+    }
+
+    @Override
+    public void close() throws IOException {
+        uri = null;
+        try {
+            if (file != null) {
+                file.close();
+            }
+        } finally {
+            file = null;
+            if (opened) {
+                opened = false;
+                transferEnded();
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.app.Activity;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.ViewGroup;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Cold-start fast path: loops the last cached playlist natively over the
+// React root while Hermes boots, until JS has its own content on screen.
+public final class InstantOnPlayer {
+    private static final String TAG = "InstantOnPlayer";
+    private static final String MANIFEST_PATH = "signage_cache/manifest.json";
+
+    // Main thread only
+    private static SignagePlayerView overlay;
+
+    private InstantOnPlayer() {
+    }
+
+    // Called from MainActivity.onCreate; true when cached content is now playing
+    public static boolean show(Activity activity) {
+        List<SignagePlayerView.Item> items = readManifest(new File(activity.getFilesDir(), MANIFEST_PATH));
+        if (items.isEmpty()) {
+            return false;
+        }
+
+        removeOverlay();
+        overlay = new SignagePlayerView(activity);
+        overlay.setListener(new SignagePlayerView.Listener() {
+            @Override
+            public void onAssetStarted(int index, SignagePlayerView.Item item) {
+                BootTimings.markFirstFrame(activity);
+            }
+
+            @Override
+            public void onAssetFailed(int index, SignagePlayerView.Item item, String message) {
+            }
+        });
+        overlay.setItems(items);
+        activity.addContentView(overlay,
+                new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        Log.d(TAG, "Playing " + items.size() + " cached assets until the React UI is ready");
+        return true;
+    }
+
+    // What the overlay shows, for the React player to continue from; null
+    // when it is gone (or `player` is the overlay). Main thread only.
+    public static SignagePlayerView.Item currentItem(SignagePlayerView player) {
+        return overlay != null && overlay != player ? overlay.currentItem() : null;
+    }
+
+    // The React player could not get a hardware decoder while the overlay
+    // still holds one: hand over right away. True when an overlay was
+    // removed, so retrying makes sense. Main thread only.
+    public static boolean yieldDecoder(SignagePlayerView player) {
+        if (overlay == null || overlay == player) {
+            return false;
+        }
+        removeOverlay();
+        return true;
+    }
+
+    // Hands the screen over to the React UI once it has rendered its first
+    // asset; safe from any thread
+    public static void dismiss() {
+        new Handler(Looper.getMainLooper()).post(InstantOnPlayer::removeOverlay);
+    }
+
+    private static void removeOverlay() {
+        if (overlay == null) {
+            return;
+        }
+        if (overlay.getParent() instanceof ViewGroup) {
+            ((ViewGroup) overlay.getParent()).removeView(overlay);
+        }
+        overlay.release();
+        overlay = null;
+        Log.d(TAG, "Instant-on playback dismissed");
+    }
+
+    // The LocalAsset list saved by AssetDownloader.ts; web items and files
+    // that no longer exist are skipped
+    private static List<SignagePlayerView.Item> readManifest(File manifest) {
+        List<SignagePlayerView.Item> items = new ArrayList<>();
+        if (!manifest.isFile()) {
+            return items;
+        }
+
+        try {
+            JSONArray assets = new JSONObject(readFile(manifest)).optJSONArray("assets");
+            for (int i = 0; assets != null && i < assets.length(); i++) {
+                JSONObject asset = assets.optJSONObject(i);
+                if (asset == null) {
+                    continue;
+                }
+                String type = asset.optString("type");
+                String url = asset.optString("url");
+                boolean playable = AssetDownloadEngine.TYPE_IMAGE.equals(type)
+                        || AssetDownloadEngine.TYPE_VIDEO.equals(type);
+                String path = Uri.parse(url).getPath();
+                if (!playable || path == null || !new File(path).isFile()) {
+                    continue;
+                }
+                items.add(new SignagePlayerView.Item(type, url,
+                        Math.round(asset.optDouble("duration", 0) * 1000),
+                        asset.isNull("name") ? null : asset.optString("name"),
+                        asset.isNull("source") ? null : asset.optString("source", null)));
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Could not read cache manifest", e);
+            items.clear();
+        }
+        return items;
+    }
+
+    private static String readFile(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        try (InputStream in = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < bytes.length) {
+                int read = in.read(bytes, offset, bytes.length - offset);
+                if (read < 0) {
+                    break;
+                }
+                offset += read;
+            }
+            return new String(bytes, 0, offset, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Loopback HTTP server for the WebView player: serves the content-addressed
+// cache (signage_cache/objects) with Range, Content-Length and long-lived
+// cache headers, so Chromium can seek and buffer MP4s and keep slides in its
+// cache instead of going through file:// every time. Bodies are sent with
+// FileChannel.transferTo straight into the socket (sendfile).
+//
+// Bound to 127.0.0.1 only, and every path starts with a random token so
+// other apps on the box can't read the cache through it.
+public final class LocalAssetServer {
+    private static final String TAG = "LocalAssetServer";
+    private static final String OBJECTS_PATH = "signage_cache/objects";
+    // One thread per connection. Chromium opens up to 6 per host, more while
+    // it swaps media; past KEEP_ALIVE_CONNECTIONS responses close the
+    // connection so idle sockets don't pin threads, past MAX_CONNECTIONS new
+    // ones are refused and retried by the client
+    private static final int KEEP_ALIVE_CONNECTIONS = 8;
+    private static final int MAX_CONNECTIONS = 32;
+    private static final int IDLE_TIMEOUT_MS = 15000;
+    private static final int MAX_HEADER_BYTES = 16 * 1024;
+    private static final int RECENT_REQUESTS = 50;
+    // Objects are named by their hash, so a URL's bytes never change
+    private static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    private static LocalAssetServer instance;
+
+    private final File objectsDir;
+    private final String token = UUID.randomUUID().toString().replace("-", "");
+    private final ThreadPoolExecutor workers;
+    private final ServerSocketChannel server;
+    private final AtomicInteger openConnections = new AtomicInteger();
+
+    // Metrics, guarded by `this`
+    private long requests;
+    private long errors;
+    private long bytesSent;
+    private long totalLatencyMs;
+    private long maxLatencyMs;
+    private final Deque<Bundle> recent = new ArrayDeque<>();
+
+    private LocalAssetServer(Context context) throws IOException {
+        objectsDir = new File(context.getFilesDir(), OBJECTS_PATH);
+        server = ServerSocketChannel.open();
+        server.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = new ThreadPoolExecutor(0, MAX_CONNECTIONS, 30, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                r -> new Thread(r, "asset-server-" + threadCount.incrementAndGet()));
+        new Thread(this::acceptLoop, "asset-server-accept").start();
+        Log.d(TAG, "Serving " + objectsDir + " at " + getBaseUrl());
+    }
+
+    // Started on first use and kept for the life of the process
+    public static synchronized LocalAssetServer getInstance(Context context) throws IOException {
+        if (instance == null) {
+            instance = new LocalAssetServer(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    // Prefix for object file names, e.g. `${baseUrl}<sha256>.mp4`
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.socket().getLocalPort() + "/" + token + "/";
+    }
+
+    public synchronized Bundle snapshot() {
+        Bundle metrics = new Bundle();
+        metrics.putDouble("requests", requests);
+        metrics.putDouble("errors", errors);
+        metrics.putDouble("bytesSent", bytesSent);
+        metrics.putDouble("averageLatencyMs", requests > 0 ? (double) totalLatencyMs / requests : 0);
+        metrics.putDouble("maxLatencyMs", maxLatencyMs);
+        metrics.putParcelableArray("recent", recent.toArray(new Bundle[0]));
+        return metrics;
+    }
+
+    private void acceptLoop() {
+        while (server.isOpen()) {
+            try {
+                SocketChannel socket = server.accept();
+                try {
+                    workers.execute(() -> serveConnection(socket));
+                } catch (RejectedExecutionException e) {
+                    Log.w(TAG, "Refusing connection: " + MAX_CONNECTIONS + " already open");
+                    socket.close();
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Accept failed", e);
+                SystemClock.sleep(1000);
+            }
+        }
+    }
+
+    // HTTP/1.1 keep-alive: Chromium reuses the connection for successive
+    // range requests while it buffers a video
+    private void serveConnection(SocketChannel socket) {
+        openConnections.incrementAndGet();
+        try (SocketChannel channel = socket) {
+            channel.socket().setSoTimeout(IDLE_TIMEOUT_MS);
+            channel.socket().setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(channel.socket().getInputStream());
+            while (true) {
+                Map<String, String> headers = new HashMap<>();
+                String requestLine = readHead(in, headers);
+                if (requestLine == null) {
+                    return;
+                }
+                boolean close = "close".equalsIgnoreCase(headers.get("connection"))
+                        || openConnections.get() > KEEP_ALIVE_CONNECTIONS;
+                long startedAt = SystemClock.elapsedRealtime();
+                Response response = handle(channel, requestLine, headers, close);
+                record(requestLine, response, SystemClock.elapsedRealtime() - startedAt);
+                if (close) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // Timeouts and the WebView dropping connections it no longer needs
+            Log.d(TAG, "Connection ended: " + e.getMessage());
+        } finally {
+            openConnections.decrementAndGet();
+        }
+    }
+
+    private static class Response {
+        final int status;
+        final long bytes;
+
+        Response(int status, long bytes) {
+            this.status = status;
+            this.bytes = bytes;
+        }
+    }
+
+    private Response handle(SocketChannel channel, String requestLine, Map<String, String> headers,
+                            boolean close) throws IOException {
+        String connection = close ? "Connection: close\r\n" : "";
+        String[] parts = requestLine.split(" ");
+        if (parts.length < 3) {
+            return sendEmpty(channel, 400, "Bad Request", connection);
+        }
+        String method = parts[0];
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return sendEmpty(channel, 405, "Method Not Allowed", "Allow: GET, HEAD\r\n" + connection);
+        }
+
+        File file = resolve(parts[1]);
+        if (file == null) {
+            return sendEmpty(channel, 404, "Not Found", connection);
+        }
+
+        String etag = "\"" + file.getName() + "\"";
+        if (etag.equals(headers.get("if-none-match"))) {
+            return sendEmpty(channel, 304, "Not Modified", "ETag: " + etag + "\r\n" + connection);
+        }
+
+        long length = file.length();
+        long start = 0;
+        long end = length - 1;
+        boolean partial = false;
+        String range = headers.get("range");
+        if (range != null) {
+            long[] bounds = parseRange(range, length);
+            if (bounds == null) {
+                return sendEmpty(channel, 416, "Range Not Satisfiable",
+                        "Content-Range: bytes */" + length + "\r\n" + connection);
+            }
+            start = bounds[0];
+            end = bounds[1];
+            partial = true;
+        }
+        long count = end - start + 1;
+
+        StringBuilder head = new StringBuilder();
+        head.append("HTTP/1.1 ").append(partial ? "206 Partial Content" : "200 OK").append("\r\n");
+        head.append("Content-Type: ").append(contentType(file.getName())).append("\r\n");
+        head.append("Content-Length: ").append(count).append("\r\n");
+        if (partial) {
+            head.append("Content-Range: bytes ").append(start).append('-').append(end)
+                    .append('/').append(length).append("\r\n");
+        }
+        head.append("Accept-Ranges: bytes\r\n");
+        head.append("Cache-Control: ").append(CACHE_CONTROL).append("\r\n");
+        head.append("ETag: ").append(etag).append("\r\n");
+        head.append("Access-Control-Allow-Origin: *\r\n");
+        head.append(connection);
+        head.append("\r\n");
+        writeFully(channel, head.toString());
+
+        if ("HEAD".equals(method)) {
+            return new Response(partial ? 206 : 200, 0);
+        }
+        try (FileChannel source = new FileInputStream(file).getChannel()) {
+            long sent = 0;
+            while (sent < count) {
+                long transferred = source.transferTo(start + sent, count - sent, channel);
+                if (transferred <= 0) {
+                    throw new IOException("Transfer stalled at " + sent + " of " + count + " bytes");
+                }
+                sent += transferred;
+            }
+            return new Response(partial ? 206 : 200, sent);
+        }
+    }
+
+    // /<token>/<sha256>.<ext> -> the object file, or null
+    private File resolve(String target) {
+        String path = target;
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        String prefix = "/" + token + "/";
+        if (!path.startsWith(prefix)) {
+            return null;
+        }
+        String name = path.substring(prefix.length());
+        if (!name.matches("[0-9a-f]{64}\\.[A-Za-z0-9]+")) {
+            return null;
+        }
+        File file = new File(objectsDir, name);
+        return file.isFile() ? file : null;
+    }
+
+    // Single ranges only ("bytes=a-b", "bytes=a-", "bytes=-n"), which is all
+    // Chromium's media stack asks for; returns inclusive bounds or null
+    private static long[] parseRange(String header, long length) {
+        String value = header.trim().toLowerCase(Locale.US);
+        if (!value.startsWith("bytes=") || value.contains(",") || length == 0) {
+            return null;
+        }
+        String spec = value.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+            }
+            return start <= end && start < length ? new long[]{start, end} : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private Response sendEmpty(SocketChannel channel, int status, String reason, String extraHeaders)
+            throws IOException {
+        writeFully(channel, "HTTP/1.1 " + status + " " + reason + "\r\n"
+                + (extraHeaders != null ? extraHeaders : "")
+                + "Content-Length: 0\r\n\r\n");
+        return new Response(status, 0);
+    }
+
+    private static void writeFully(SocketChannel channel, String text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // Request line plus lower-cased headers; null when the client closed the
+    // connection between requests
+    private static String readHead(InputStream in, Map<String, String> headers) throws IOException {
+        String requestLine;
+        do {
+            requestLine = readLine(in);
+            if (requestLine == null) {
+                return null;
+            }
+        } while (requestLine.isEmpty());
+
+        int headerBytes = 0;
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            headerBytes += line.length();
+            if (headerBytes > MAX_HEADER_BYTES) {
+                throw new IOException("Request headers too large");
+            }
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US), line.substring(colon + 1).trim());
+            }
+        }
+        return requestLine;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                break;
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+            if (line.size() > MAX_HEADER_BYTES) {
+                throw new IOException("Request line too long");
+            }
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        return line.toString(StandardCharsets.US_ASCII.name());
+    }
+
+    private static String contentType(String name) {
+        String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.US);
+        switch (extension) {
+            case "jpg":
+            case "jpeg":
+                return "image/jpeg";
+            case "png":
+                return "image/png";
+            case "gif":
+                return "image/gif";
+            case "webp":
+                return "image/webp";
+            case "mp4":
+                return "video/mp4";
+            case "webm":
+                return "video/webm";
+            case "mov":
+                return "video/quicktime";
+            case "avi":
+                return "video/x-msvideo";
+            default:
+                return "application/octet-stream";
+        }
+    }
+
+    private synchronized void record(String requestLine, Response response, long latencyMs) {
+        requests++;
+        if (response.status >= 400) {
+            errors++;
+        }
+        bytesSent += response.bytes;
+        totalLatencyMs += latencyMs;
+        maxLatencyMs = Math.max(maxLatencyMs, latencyMs);
+
+        Bundle entry = new Bundle();
+        String[] parts = requestLine.split(" ");
+        String target = parts.length > 1 ? parts[1] : requestLine;
+        entry.putString("path", target.substring(target.lastIndexOf('/') + 1));
+        entry.putDouble("status", response.status);
+        entry.putDouble("bytes", response.bytes);
+        entry.putDouble("latencyMs", latencyMs);
+        recent.addLast(entry);
+        if (recent.size() > RECENT_REQUESTS) {
+            recent.removeFirst();
+        }
+    }
+}
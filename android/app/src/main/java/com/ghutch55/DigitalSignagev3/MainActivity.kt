@@ -21,6 +21,16 @@ class MainActivity : ReactActivity() {
     SplashScreenManager.registerOnActivity(this)
     // @generated end expo-splashscreen
     super.onCreate(null)
+
+    // Loop the last cached playlist natively while the React UI boots
+    if (InstantOnPlayer.show(this)) {
+      SplashScreenManager.hide()
+    }
+  }
+
+  override fun onDestroy() {
+    InstantOnPlayer.dismiss()
+    super.onDestroy()
   }
 
   /**
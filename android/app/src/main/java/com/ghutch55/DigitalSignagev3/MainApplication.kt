@@ -2,6 +2,8 @@ package com.ghutch55.DigitalSignagev3
 
 import android.app.Application
 import android.content.res.Configuration
+import android.os.Build
+import java.io.File
 
 import com.ghutch55.DigitalSignagev3.AndroidSettingsPackage;
 
@@ -28,6 +30,10 @@ class MainApplication : Application(), ReactApplication {
             // Packages that cannot be autolinked yet can be added manually here, for example:
             // packages.add(MyReactNativePackage())
             packages.add(AndroidSettingsPackage());
+            if (BuildConfig.IS_NEW_ARCHITECTURE_ENABLED) {
+              // Synchronous settings reads over JSI (specs/NativeSignageSettings.ts)
+              packages.add(SignageSettingsPackage())
+            }
             return packages
           }
 
@@ -45,6 +51,10 @@ class MainApplication : Application(), ReactApplication {
 
   override fun onCreate() {
     super.onCreate()
+    // The :sync process only hosts AutoStartService and never runs React Native
+    if (isSyncProcess()) {
+      return
+    }
     SoLoader.init(this, OpenSourceMergedSoMapping)
     if (BuildConfig.IS_NEW_ARCHITECTURE_ENABLED) {
       // If you opted-in for the New Architecture, we load the native entry point for this app.
@@ -55,6 +65,17 @@ class MainApplication : Application(), ReactApplication {
 
   override fun onConfigurationChanged(newConfig: Configuration) {
     super.onConfigurationChanged(newConfig)
-    ApplicationLifecycleDispatcher.onConfigurationChanged(this, newConfig)
+    if (!isSyncProcess()) {
+      ApplicationLifecycleDispatcher.onConfigurationChanged(this, newConfig)
+    }
+  }
+
+  private fun isSyncProcess(): Boolean {
+    val processName = if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+      Application.getProcessName()
+    } else {
+      File("/proc/self/cmdline").readText().trimEnd('\u0000')
+    }
+    return processName.endsWith(":sync")
   }
 }
@@ -0,0 +1,44 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.os.Bundle;
+
+// Process-wide playback counters, read through SignagePlayerModule.
+public final class PlaybackMetrics {
+    // A swap later than this after its boundary counts as a visible stall
+    private static final long LATE_THRESHOLD_MS = 50;
+
+    private static long transitions;
+    private static long lateTransitions;
+    private static long totalLatencyMs;
+    private static long maxLatencyMs;
+    private static long lastLatencyMs;
+    private static long failures;
+
+    private PlaybackMetrics() {
+    }
+
+    public static synchronized void recordTransition(long latencyMs) {
+        transitions++;
+        totalLatencyMs += latencyMs;
+        lastLatencyMs = latencyMs;
+        maxLatencyMs = Math.max(maxLatencyMs, latencyMs);
+        if (latencyMs > LATE_THRESHOLD_MS) {
+            lateTransitions++;
+        }
+    }
+
+    public static synchronized void recordFailure() {
+        failures++;
+    }
+
+    public static synchronized Bundle snapshot() {
+        Bundle metrics = new Bundle();
+        metrics.putDouble("transitions", transitions);
+        metrics.putDouble("lateTransitions", lateTransitions);
+        metrics.putDouble("averageLatencyMs", transitions > 0 ? (double) totalLatencyMs / transitions : 0);
+        metrics.putDouble("maxLatencyMs", maxLatencyMs);
+        metrics.putDouble("lastLatencyMs", lastLatencyMs);
+        metrics.putDouble("failures", failures);
+        return metrics;
+    }
+}
@@ -0,0 +1,111 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+// Relaunches the signage activity only when the player has stopped reporting
+// rendered assets for a whole stall window past the end of the asset on
+// screen, so a long video or slide never counts as a stall. Repeated
+// relaunches back off exponentially so a box that cannot recover is not
+// restarted in a tight loop.
+public class PlaybackWatchdog {
+    private static final String TAG = "PlaybackWatchdog";
+    private static final String PREFS_NAME = "signage_watchdog";
+    private static final String KEY_STALL_WINDOW = "stall_window_ms";
+    private static final String KEY_RESTART_COUNT = "restart_count";
+    private static final long DEFAULT_STALL_WINDOW_MS = 2 * 60 * 1000;
+    private static final long MIN_STALL_WINDOW_MS = 30 * 1000;
+    private static final long MAX_BACKOFF_MS = 30 * 60 * 1000;
+
+    // elapsedRealtime of the last rendered asset, 0 before the first one
+    private static volatile long lastHeartbeatAt;
+    // How long the asset that sent it stays on screen
+    private static volatile long lastItemDurationMs;
+
+    private final SharedPreferences prefs;
+    private final Handler handler;
+    private final Runnable relaunch;
+    private final Runnable checkRunnable = this::check;
+
+    // Stalls are measured from the later of the last heartbeat and this,
+    // so a fresh launch gets a full window to render its first asset
+    private long graceFrom;
+    private int consecutiveRelaunches;
+
+    public PlaybackWatchdog(Context context, Handler handler, Runnable relaunch) {
+        this.prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.handler = handler;
+        this.relaunch = relaunch;
+    }
+
+    public static void heartbeat(long itemDurationMs) {
+        lastItemDurationMs = Math.max(itemDurationMs, 0);
+        lastHeartbeatAt = SystemClock.elapsedRealtime();
+    }
+
+    public static long getLastHeartbeatAt() {
+        return lastHeartbeatAt;
+    }
+
+    public static long getStallWindowMs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .getLong(KEY_STALL_WINDOW, DEFAULT_STALL_WINDOW_MS);
+    }
+
+    public static void setStallWindowMs(Context context, long stallWindowMs) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putLong(KEY_STALL_WINDOW, Math.max(stallWindowMs, MIN_STALL_WINDOW_MS))
+                .apply();
+    }
+
+    public static int getRestartCount(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).getInt(KEY_RESTART_COUNT, 0);
+    }
+
+    public void start() {
+        graceFrom = SystemClock.elapsedRealtime();
+        consecutiveRelaunches = 0;
+        handler.removeCallbacks(checkRunnable);
+        handler.postDelayed(checkRunnable, stallWindow());
+    }
+
+    public void stop() {
+        handler.removeCallbacks(checkRunnable);
+    }
+
+    private void check() {
+        long now = SystemClock.elapsedRealtime();
+        long stallWindow = stallWindow();
+        long lastSign = Math.max(lastHeartbeatAt, graceFrom);
+        long silentFor = now - lastSign;
+        // The next heartbeat is only due once the current asset has ended
+        long allowed = stallWindow + (lastHeartbeatAt > graceFrom ? lastItemDurationMs : 0);
+
+        if (silentFor < allowed) {
+            if (lastHeartbeatAt > graceFrom) {
+                consecutiveRelaunches = 0;
+            }
+            handler.postDelayed(checkRunnable, allowed - silentFor);
+            return;
+        }
+
+        int restarts = prefs.getInt(KEY_RESTART_COUNT, 0) + 1;
+        prefs.edit().putInt(KEY_RESTART_COUNT, restarts).apply();
+        consecutiveRelaunches++;
+        Log.w(TAG, "No rendered asset for " + silentFor + " ms, relaunching (restart #" + restarts
+                + ", " + consecutiveRelaunches + " in a row)");
+        relaunch.run();
+
+        // stallWindow, 2x, 4x, ... until playback resumes
+        long backoff = stallWindow << Math.min(consecutiveRelaunches - 1, 16);
+        graceFrom = now;
+        handler.postDelayed(checkRunnable, Math.min(backoff, Math.max(MAX_BACKOFF_MS, stallWindow)));
+    }
+
+    private long stallWindow() {
+        return prefs.getLong(KEY_STALL_WINDOW, DEFAULT_STALL_WINDOW_MS);
+    }
+}
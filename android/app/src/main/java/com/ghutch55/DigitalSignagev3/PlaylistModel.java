@@ -0,0 +1,340 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+// Typed view of one playlist from api.php, with the schedule fields parsed
+// once so evaluating them later is plain arithmetic.
+public class PlaylistModel {
+    public static final int ALL_WEEKDAYS = 0x7f;
+
+    public static class Asset {
+        public final String filepath;
+        public final String filetype;
+        public final int durationSeconds;
+        public final String name;
+        public final int order;
+
+        public Asset(String filepath, String filetype, int durationSeconds, String name, int order) {
+            this.filepath = filepath;
+            this.filetype = filetype;
+            this.durationSeconds = durationSeconds;
+            this.name = name;
+            this.order = order;
+        }
+    }
+
+    public final String id;
+    public final String name;
+    public final boolean isDefault;
+    // Seconds since local midnight, inclusive on both ends; -1 when unset
+    public final int startSecond;
+    public final int endSecond;
+    // Local epoch millis; Long.MIN_VALUE / Long.MAX_VALUE when unset
+    public final long startDateMs;
+    public final long endDateMs;
+    // Bit (Calendar.DAY_OF_WEEK - 1) set for each scheduled day
+    public final int weekdayMask;
+    public final List<Asset> assets;
+
+    public PlaylistModel(String id, String name, boolean isDefault, int startSecond, int endSecond,
+                         long startDateMs, long endDateMs, int weekdayMask, List<Asset> assets) {
+        this.id = id;
+        this.name = name;
+        this.isDefault = isDefault;
+        this.startSecond = startSecond;
+        this.endSecond = endSecond;
+        this.startDateMs = startDateMs;
+        this.endDateMs = endDateMs;
+        this.weekdayMask = weekdayMask;
+        this.assets = assets;
+    }
+
+    // Streams the api.php response instead of building a JSONObject tree:
+    // unknown keys (and whole sections like "functions") are skipped without
+    // being materialised, and durations/orders are parsed to ints once here.
+    // Entries of the wrong type are dropped; a malformed document throws.
+    public static List<PlaylistModel> parseResponse(byte[] body) throws IOException {
+        List<PlaylistModel> models = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(new InputStreamReader(
+                new ByteArrayInputStream(body), StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("playlists") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        PlaylistModel model = readPlaylist(reader);
+                        if (model != null) {
+                            models.add(model);
+                        }
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (RuntimeException e) {
+            // JsonReader reports structural mismatches (IllegalStateException)
+            // and out-of-range numbers (NumberFormatException) unchecked
+            throw new IOException("Invalid playlist response: " + e.getMessage(), e);
+        }
+
+        if (models.isEmpty()) {
+            throw new IOException("No playlists found");
+        }
+        return models;
+    }
+
+    private static PlaylistModel readPlaylist(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+
+        String id = null;
+        String name = null;
+        boolean isDefault = false;
+        String startTime = null;
+        String endTime = null;
+        String startDate = null;
+        String endDate = null;
+        String weekdays = null;
+        List<Asset> assets = new ArrayList<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = readString(reader);
+                    break;
+                case "name":
+                    name = readString(reader);
+                    break;
+                case "is_default":
+                    isDefault = readBoolean(reader);
+                    break;
+                case "starttime":
+                    startTime = readString(reader);
+                    break;
+                case "endtime":
+                    endTime = readString(reader);
+                    break;
+                case "startdate":
+                    startDate = readString(reader);
+                    break;
+                case "enddate":
+                    endDate = readString(reader);
+                    break;
+                case "weekdays":
+                    weekdays = readString(reader);
+                    break;
+                case "assets":
+                    readAssets(reader, assets);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new PlaylistModel(
+                id,
+                name,
+                isDefault,
+                parseTimeOfDay(startTime),
+                parseTimeOfDay(endTime),
+                startDate != null ? parseDate(startDate, false) : Long.MIN_VALUE,
+                endDate != null ? parseDate(endDate, true) : Long.MAX_VALUE,
+                parseWeekdays(weekdays),
+                assets);
+    }
+
+    private static void readAssets(JsonReader reader, List<Asset> assets) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return;
+        }
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+
+            String filepath = null;
+            String filetype = null;
+            String time = null;
+            String name = null;
+            String playingOrder = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "filepath":
+                        filepath = readString(reader);
+                        break;
+                    case "filetype":
+                        filetype = readString(reader);
+                        break;
+                    case "time":
+                        time = readString(reader);
+                        break;
+                    case "name":
+                        name = readString(reader);
+                        break;
+                    case "playing_order":
+                        playingOrder = readString(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            assets.add(new Asset(filepath, filetype, parseLeadingInt(time), name, parseLeadingInt(playingOrder)));
+        }
+        reader.endArray();
+    }
+
+    // Strings, numbers and booleans as text; null for JSON null or any
+    // nested value
+    private static String readString(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case STRING:
+            case NUMBER:
+                return reader.nextString();
+            case BOOLEAN:
+                return String.valueOf(reader.nextBoolean());
+            case NULL:
+                reader.nextNull();
+                return null;
+            default:
+                reader.skipValue();
+                return null;
+        }
+    }
+
+    private static boolean readBoolean(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NUMBER:
+                return reader.nextDouble() != 0;
+            case STRING:
+                String value = reader.nextString();
+                return value.equalsIgnoreCase("true") || value.equals("1");
+            default:
+                reader.skipValue();
+                return false;
+        }
+    }
+
+    // Assets with a file and a positive duration, in playing order
+    public List<Asset> playableAssets() {
+        List<Asset> playable = new ArrayList<>();
+        for (Asset asset : assets) {
+            if (asset.filepath != null && !asset.filepath.isEmpty() && asset.durationSeconds > 0) {
+                playable.add(asset);
+            }
+        }
+        Collections.sort(playable, (a, b) -> Integer.compare(a.order, b.order));
+        return playable;
+    }
+
+    public boolean isScheduledOn(int calendarDayOfWeek) {
+        return (weekdayMask & (1 << (calendarDayOfWeek - 1))) != 0;
+    }
+
+    static int parseLeadingInt(String value) {
+        if (value == null) {
+            return 0;
+        }
+        String trimmed = value.trim();
+        int end = 0;
+        if (end < trimmed.length() && (trimmed.charAt(end) == '-' || trimmed.charAt(end) == '+')) {
+            end++;
+        }
+        while (end < trimmed.length() && Character.isDigit(trimmed.charAt(end))) {
+            end++;
+        }
+        try {
+            return Integer.parseInt(trimmed.substring(0, end));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // "HH:MM" or "HH:MM:SS" -> seconds since midnight, -1 if absent/invalid
+    static int parseTimeOfDay(String value) {
+        if (value == null || value.isEmpty()) {
+            return -1;
+        }
+        String[] parts = value.trim().split(":");
+        if (parts.length < 2) {
+            return -1;
+        }
+        int hours = parseLeadingInt(parts[0]);
+        int minutes = parseLeadingInt(parts[1]);
+        int seconds = parts.length > 2 ? parseLeadingInt(parts[2]) : 0;
+        return hours * 3600 + minutes * 60 + seconds;
+    }
+
+    // Date-only values cover the whole local day: start dates begin at
+    // 00:00:00 and end dates run through 23:59:59.999
+    static long parseDate(String value, boolean endOfDay) {
+        String trimmed = value.trim();
+        String[] patterns = {"yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd"};
+        for (String pattern : patterns) {
+            SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+            format.setLenient(false);
+            try {
+                Date date = format.parse(trimmed);
+                if (date == null) {
+                    continue;
+                }
+                if (!pattern.equals("yyyy-MM-dd") || !endOfDay) {
+                    return date.getTime();
+                }
+                Calendar calendar = Calendar.getInstance();
+                calendar.setTime(date);
+                calendar.add(Calendar.DAY_OF_MONTH, 1);
+                return calendar.getTimeInMillis() - 1;
+            } catch (ParseException ignored) {
+                // try the next pattern
+            }
+        }
+        return endOfDay ? Long.MAX_VALUE : Long.MIN_VALUE;
+    }
+
+    // "Mon, Tue" or "Monday, Tuesday" -> weekday bit mask; all days when absent
+    static int parseWeekdays(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return ALL_WEEKDAYS;
+        }
+        String[] names = {"sun", "mon", "tue", "wed", "thu", "fri", "sat"};
+        int mask = 0;
+        for (String token : value.split(",")) {
+            String day = token.trim().toLowerCase(Locale.US);
+            for (int i = 0; i < names.length; i++) {
+                if (day.startsWith(names[i])) {
+                    mask |= 1 << i;
+                }
+            }
+        }
+        return mask;
+    }
+}
@@ -0,0 +1,181 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+public class PlaylistPoller {
+    private static final String TAG = "PlaylistPoller";
+    public static final String API_BASE_URL = "https://www.applicationbank.com/signage/api.php";
+
+    public interface Listener {
+        // Throws when the body can't be applied; the poll then counts as
+        // failed and the same body is offered again on the next attempt
+        void onPlaylistChanged(byte[] body) throws IOException;
+
+        void onPollFailed(String message);
+    }
+
+    private final OkHttpClient client;
+    private final Listener listener;
+    private final Handler handler;
+    private final Runnable pollRunnable = this::poll;
+
+    private String deviceName;
+    private long intervalMs;
+    private long retryDelayMs;
+    private boolean running;
+
+    // Validators and fingerprint of the last body handed to the listener
+    private String etag;
+    private String lastModified;
+    private byte[] bodyHash;
+    // Bumped whenever the above are reset, so a poll still in flight doesn't
+    // restore them afterwards
+    private int generation;
+
+    public PlaylistPoller(OkHttpClient client, Listener listener) {
+        this.client = client;
+        this.listener = listener;
+
+        HandlerThread thread = new HandlerThread("playlist-poller", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        this.handler = new Handler(thread.getLooper());
+    }
+
+    // Starts (or re-targets) polling. The first poll goes out immediately and
+    // always reports the playlist, later ones only when it changed.
+    public synchronized void start(String deviceName, long intervalMs, long retryDelayMs) {
+        etag = null;
+        lastModified = null;
+        bodyHash = null;
+        generation++;
+        this.deviceName = deviceName;
+        this.intervalMs = intervalMs;
+        this.retryDelayMs = retryDelayMs;
+        this.running = true;
+
+        handler.removeCallbacks(pollRunnable);
+        handler.post(pollRunnable);
+        Log.d(TAG, "Polling started for " + deviceName + " every " + intervalMs + " ms");
+    }
+
+    public synchronized void stop() {
+        running = false;
+        handler.removeCallbacks(pollRunnable);
+    }
+
+    // Forgets the last response so the next poll reports the playlist again
+    public synchronized void pollNow() {
+        bodyHash = null;
+        generation++;
+        if (running) {
+            handler.removeCallbacks(pollRunnable);
+            handler.post(pollRunnable);
+        }
+    }
+
+    public void shutdown() {
+        stop();
+        handler.getLooper().quitSafely();
+    }
+
+    private void poll() {
+        String device;
+        String ifNoneMatch;
+        String ifModifiedSince;
+        int pollGeneration;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            device = deviceName;
+            ifNoneMatch = bodyHash != null ? etag : null;
+            ifModifiedSince = bodyHash != null ? lastModified : null;
+            pollGeneration = generation;
+        }
+
+        long nextDelay = intervalMs;
+        try {
+            Request.Builder builder = new Request.Builder().url(Uri.parse(API_BASE_URL).buildUpon()
+                    .appendQueryParameter("id", device)
+                    .build()
+                    .toString());
+            if (ifNoneMatch != null) {
+                builder.header("If-None-Match", ifNoneMatch);
+            }
+            if (ifModifiedSince != null) {
+                builder.header("If-Modified-Since", ifModifiedSince);
+            }
+
+            try (Response response = client.newCall(builder.build()).execute()) {
+                if (response.code() == 304) {
+                    return;
+                }
+                if (!response.isSuccessful()) {
+                    throw new IOException("API Error: " + response.code());
+                }
+
+                ResponseBody body = response.body();
+                if (body == null) {
+                    throw new IOException("API Error: empty response");
+                }
+                byte[] bytes = body.bytes();
+                byte[] hash = sha256(bytes);
+
+                // Servers without validators still answer 200 with the same
+                // body; only a different body counts as a change
+                synchronized (this) {
+                    if (Arrays.equals(hash, bodyHash)) {
+                        etag = response.header("ETag");
+                        lastModified = response.header("Last-Modified");
+                        return;
+                    }
+                }
+                listener.onPlaylistChanged(bytes);
+
+                // Only a body that was applied is remembered as seen
+                synchronized (this) {
+                    if (pollGeneration == generation) {
+                        etag = response.header("ETag");
+                        lastModified = response.header("Last-Modified");
+                        bodyHash = hash;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Playlist poll failed", e);
+            nextDelay = retryDelayMs;
+            listener.onPollFailed(e.getMessage() != null ? e.getMessage() : e.toString());
+        } finally {
+            scheduleNext(nextDelay);
+        }
+    }
+
+    private synchronized void scheduleNext(long delayMs) {
+        if (running && delayMs > 0) {
+            handler.removeCallbacks(pollRunnable);
+            handler.postDelayed(pollRunnable, delayMs);
+        }
+    }
+
+    private static byte[] sha256(byte[] bytes) throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.WritableMap;
+
+import org.json.JSONObject;
+
+// Polling and schedule evaluation run in the :sync process (see
+// SignageSyncBinder); this module forwards calls and relays its events.
+public class PlaylistPollerModule extends ReactContextBaseJavaModule implements SignageSyncClient.Listener {
+    private static final String MODULE_NAME = "PlaylistPollerModule";
+    private static final String TAG = "PlaylistPollerModule";
+    private static final String ACTIVE_CHANGED_EVENT = "ActivePlaylistChanged";
+    private static final String FAILED_EVENT = "PlaylistPollFailed";
+
+    private final SignageSyncClient sync;
+
+    public PlaylistPollerModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+        sync = SignageSyncClient.getInstance(reactContext);
+        sync.addListener(this);
+    }
+
+    @Override
+    public String getName() {
+        return MODULE_NAME;
+    }
+
+    @Override
+    public void invalidate() {
+        super.invalidate();
+        sync.removeListener(this);
+        sync.stopPolling();
+    }
+
+    @ReactMethod
+    public void startPolling(String deviceName, double intervalMs, double retryDelayMs) {
+        sync.startPolling(deviceName, (long) intervalMs, (long) retryDelayMs);
+    }
+
+    @ReactMethod
+    public void stopPolling() {
+        sync.stopPolling();
+    }
+
+    @ReactMethod
+    public void pollNow() {
+        sync.call(ISignageSync::pollNow);
+    }
+
+    // Required by NativeEventEmitter on the JS side
+    @ReactMethod
+    public void addListener(String eventName) {
+    }
+
+    @ReactMethod
+    public void removeListeners(double count) {
+    }
+
+    @Override
+    public void onActivePlaylistChanged(String eventJson) {
+        try {
+            SignageEvents.emit(getReactApplicationContext(), ACTIVE_CHANGED_EVENT,
+                    ReactJson.toMap(new JSONObject(eventJson)));
+        } catch (Exception e) {
+            Log.w(TAG, "Could not relay active playlist", e);
+        }
+    }
+
+    @Override
+    public void onPollFailed(String message) {
+        WritableMap event = Arguments.createMap();
+        event.putString("message", message);
+        SignageEvents.emit(getReactApplicationContext(), FAILED_EVENT, event);
+    }
+}
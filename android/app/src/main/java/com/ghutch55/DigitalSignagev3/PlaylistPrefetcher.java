@@ -0,0 +1,146 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// Downloads the assets of playlists that will start within the horizon, so
+// a scheduled switch (the 11:00 lunch menu) plays from the cache instead of
+// starting its downloads at 11:00. Runs whenever the schedule is recompiled
+// and again each time another playlist start moves into the horizon. The
+// downloads run at background priority, so only inside off-peak windows.
+public class PlaylistPrefetcher {
+    private static final String TAG = "PlaylistPrefetcher";
+    public static final long DEFAULT_HORIZON_MS = 2L * 60 * 60 * 1000;
+    private static final long RETRY_DELAY_MS = 10 * 60 * 1000;
+
+    private final AssetStore store;
+    private final CacheBudgetManager budget;
+    private final AssetDownloadEngine engine;
+    private final Handler handler;
+    private final Runnable prefetchRunnable = this::prefetch;
+
+    private volatile long horizonMs = DEFAULT_HORIZON_MS;
+    private PlaylistSchedule schedule;
+    // Uptime the next pass is armed for, 0 when none is
+    private long nextRunAt;
+    private boolean inFlight;
+    private boolean rerun;
+
+    public PlaylistPrefetcher(AssetStore store, CacheBudgetManager budget, AssetDownloadEngine engine) {
+        this.store = store;
+        this.budget = budget;
+        this.engine = engine;
+
+        HandlerThread thread = new HandlerThread("playlist-prefetch", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        this.handler = new Handler(thread.getLooper());
+    }
+
+    public void update(PlaylistSchedule schedule) {
+        handler.post(() -> {
+            this.schedule = schedule;
+            prefetch();
+        });
+    }
+
+    // 0 turns prefetching off
+    public void setHorizonMs(long horizonMs) {
+        this.horizonMs = Math.max(0, horizonMs);
+        handler.post(this::prefetch);
+    }
+
+    public void shutdown() {
+        handler.removeCallbacks(prefetchRunnable);
+        handler.getLooper().quitSafely();
+    }
+
+    private void prefetch() {
+        handler.removeCallbacks(prefetchRunnable);
+        nextRunAt = 0;
+        if (schedule == null) {
+            return;
+        }
+        if (inFlight) {
+            rerun = true;
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long horizon = horizonMs;
+        List<PlaylistModel> upcoming = horizon > 0
+                ? schedule.startingBetween(now, now + horizon)
+                : Collections.emptyList();
+
+        Set<String> urls = new LinkedHashSet<>();
+        List<AssetDownloadEngine.Request> requests = new ArrayList<>();
+        for (PlaylistModel playlist : upcoming) {
+            for (PlaylistModel.Asset asset : playlist.playableAssets()) {
+                String type = AssetDownloadEngine.classify(asset.filetype);
+                if (type == null || AssetDownloadEngine.TYPE_WEB.equals(type) || !urls.add(asset.filepath)) {
+                    continue;
+                }
+                if (store.lookup(asset.filepath) == null) {
+                    // Background: queued behind the playlist on screen and
+                    // held for the off-peak windows
+                    requests.add(new AssetDownloadEngine.Request(requests.size(), asset.filepath,
+                            asset.filetype, asset.durationSeconds, asset.name,
+                            AssetDownloadEngine.PRIORITY_BACKGROUND));
+                }
+            }
+        }
+        // Kept from eviction until they have played, but never admitted over
+        // the budget the way the active playlist is
+        budget.setPrefetchUrls(urls);
+
+        if (horizon > 0) {
+            long nextStart = schedule.firstStartAfter(now + horizon);
+            if (nextStart != Long.MAX_VALUE) {
+                runWithin(Math.max(nextStart - horizon - now, 0));
+            }
+        }
+        if (requests.isEmpty()) {
+            return;
+        }
+
+        Log.d(TAG, "Prefetching " + requests.size() + " assets of " + upcoming.size()
+                + " playlists starting within " + horizon / 60000 + " min");
+        inFlight = true;
+        engine.downloadAll(requests, result -> {
+        }, results -> handler.post(() -> {
+            inFlight = false;
+            int failed = 0;
+            for (AssetDownloadEngine.Result result : results) {
+                if (!result.isSuccess()) {
+                    failed++;
+                }
+            }
+            Log.d(TAG, "Prefetched " + (results.size() - failed) + " of " + results.size() + " assets");
+
+            if (rerun) {
+                rerun = false;
+                prefetch();
+            } else if (failed > 0) {
+                runWithin(RETRY_DELAY_MS);
+            }
+        }));
+    }
+
+    // Arms the next pass unless one is already due sooner
+    private void runWithin(long delayMs) {
+        long at = SystemClock.uptimeMillis() + delayMs;
+        if (nextRunAt == 0 || at < nextRunAt) {
+            handler.removeCallbacks(prefetchRunnable);
+            handler.postDelayed(prefetchRunnable, delayMs);
+            nextRunAt = at;
+        }
+    }
+}
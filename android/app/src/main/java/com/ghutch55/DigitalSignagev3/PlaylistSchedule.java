@@ -0,0 +1,196 @@
+package com.ghutch55.DigitalSignagev3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+
+// Immutable index of which playlist is active when, compiled once per API
+// response for a rolling one-week window. Lookups are a binary search over
+// segment start times; nothing is parsed or re-evaluated per query.
+public class PlaylistSchedule {
+    public static final long WINDOW_MS = 7L * 24 * 60 * 60 * 1000;
+
+    private final List<PlaylistModel> playlists;
+    private final long windowStart;
+    private final long windowEnd;
+    // segmentStarts[k] .. segmentStarts[k + 1] (or windowEnd) plays playlists[segmentPlaylists[k]]
+    private final long[] segmentStarts;
+    private final int[] segmentPlaylists;
+
+    private PlaylistSchedule(List<PlaylistModel> playlists, long windowStart, long windowEnd,
+                             long[] segmentStarts, int[] segmentPlaylists) {
+        this.playlists = playlists;
+        this.windowStart = windowStart;
+        this.windowEnd = windowEnd;
+        this.segmentStarts = segmentStarts;
+        this.segmentPlaylists = segmentPlaylists;
+    }
+
+    public static PlaylistSchedule compile(List<PlaylistModel> playlists, long now) {
+        long windowEnd = now + WINDOW_MS;
+        int fallback = defaultIndex(playlists);
+
+        // Every scheduled occurrence of every non-default playlist in the window,
+        // as (time, +1/-1, playlist index) edges
+        List<long[]> edges = new ArrayList<>();
+        for (int i = 0; i < playlists.size(); i++) {
+            PlaylistModel playlist = playlists.get(i);
+            if (playlist.isDefault) {
+                continue;
+            }
+
+            Calendar day = Calendar.getInstance();
+            day.setTimeInMillis(now);
+            setTimeOfDay(day, 0);
+            while (day.getTimeInMillis() < windowEnd) {
+                long dayStart = day.getTimeInMillis();
+                int dayOfWeek = day.get(Calendar.DAY_OF_WEEK);
+                day.add(Calendar.DAY_OF_MONTH, 1);
+                long nextDayStart = day.getTimeInMillis();
+
+                if (!playlist.isScheduledOn(dayOfWeek)) {
+                    continue;
+                }
+
+                long start = playlist.startSecond >= 0 ? atSecond(dayStart, playlist.startSecond) : dayStart;
+                // End times are inclusive to the second
+                long end = playlist.endSecond >= 0 ? atSecond(dayStart, playlist.endSecond) + 1000 : nextDayStart;
+                long dateEnd = playlist.endDateMs == Long.MAX_VALUE ? Long.MAX_VALUE : playlist.endDateMs + 1;
+
+                start = Math.max(Math.max(start, playlist.startDateMs), now);
+                end = Math.min(Math.min(end, dateEnd), windowEnd);
+                if (start < end) {
+                    edges.add(new long[]{start, 1, i});
+                    edges.add(new long[]{end, -1, i});
+                }
+            }
+        }
+        Collections.sort(edges, (a, b) -> Long.compare(a[0], b[0]));
+
+        // Sweep the edges; in each elementary segment the first playlist in
+        // response order wins, otherwise the default
+        int[] coverage = new int[playlists.size()];
+        List<Long> starts = new ArrayList<>();
+        List<Integer> winners = new ArrayList<>();
+        starts.add(now);
+        winners.add(fallback);
+
+        int e = 0;
+        while (e < edges.size()) {
+            long time = edges.get(e)[0];
+            while (e < edges.size() && edges.get(e)[0] == time) {
+                coverage[(int) edges.get(e)[2]] += (int) edges.get(e)[1];
+                e++;
+            }
+
+            int winner = fallback;
+            for (int i = 0; i < coverage.length; i++) {
+                if (coverage[i] > 0) {
+                    winner = i;
+                    break;
+                }
+            }
+
+            int last = starts.size() - 1;
+            if (time == starts.get(last)) {
+                winners.set(last, winner);
+            } else if (winner != winners.get(last)) {
+                starts.add(time);
+                winners.add(winner);
+            }
+        }
+
+        long[] segmentStarts = new long[starts.size()];
+        int[] segmentPlaylists = new int[winners.size()];
+        for (int k = 0; k < segmentStarts.length; k++) {
+            segmentStarts[k] = starts.get(k);
+            segmentPlaylists[k] = winners.get(k);
+        }
+        return new PlaylistSchedule(playlists, now, windowEnd, segmentStarts, segmentPlaylists);
+    }
+
+    public List<PlaylistModel> getPlaylists() {
+        return playlists;
+    }
+
+    public boolean covers(long time) {
+        return time >= windowStart && time < windowEnd;
+    }
+
+    public PlaylistModel activeAt(long time) {
+        return playlists.get(segmentPlaylists[segmentAt(time)]);
+    }
+
+    // The next playlist that will take over after the one active at `time`,
+    // or null if nothing changes before the end of the window
+    public PlaylistModel upcomingAfter(long time) {
+        int current = segmentAt(time);
+        for (int k = current + 1; k < segmentPlaylists.length; k++) {
+            if (segmentPlaylists[k] != segmentPlaylists[current]) {
+                return playlists.get(segmentPlaylists[k]);
+            }
+        }
+        return null;
+    }
+
+    // Playlists, other than the one active at `from`, that take over at some
+    // point in (from, to], in order of their first start
+    public List<PlaylistModel> startingBetween(long from, long to) {
+        PlaylistModel active = activeAt(from);
+        List<PlaylistModel> starting = new ArrayList<>();
+        for (int k = segmentAt(from) + 1; k < segmentStarts.length && segmentStarts[k] <= to; k++) {
+            PlaylistModel playlist = playlists.get(segmentPlaylists[k]);
+            if (playlist != active && !starting.contains(playlist)) {
+                starting.add(playlist);
+            }
+        }
+        return starting;
+    }
+
+    // The first switch after `time`, or Long.MAX_VALUE if none is left in
+    // the window
+    public long firstStartAfter(long time) {
+        int next = segmentAt(time) + 1;
+        return next < segmentStarts.length ? segmentStarts[next] : Long.MAX_VALUE;
+    }
+
+    // When the active playlist can next change (or the window must be recompiled)
+    public long nextBoundaryAfter(long time) {
+        int next = segmentAt(time) + 1;
+        return next < segmentStarts.length ? segmentStarts[next] : windowEnd;
+    }
+
+    private int segmentAt(long time) {
+        int index = Arrays.binarySearch(segmentStarts, time);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        return Math.max(index, 0);
+    }
+
+    private static int defaultIndex(List<PlaylistModel> playlists) {
+        for (int i = 0; i < playlists.size(); i++) {
+            if (playlists.get(i).isDefault) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    // Via Calendar rather than arithmetic so DST days land on the wall-clock time
+    private static long atSecond(long dayStart, int secondOfDay) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(dayStart);
+        setTimeOfDay(calendar, secondOfDay);
+        return calendar.getTimeInMillis();
+    }
+
+    private static void setTimeOfDay(Calendar calendar, int secondOfDay) {
+        calendar.set(Calendar.HOUR_OF_DAY, secondOfDay / 3600);
+        calendar.set(Calendar.MINUTE, (secondOfDay % 3600) / 60);
+        calendar.set(Calendar.SECOND, secondOfDay % 60);
+        calendar.set(Calendar.MILLISECOND, 0);
+    }
+}
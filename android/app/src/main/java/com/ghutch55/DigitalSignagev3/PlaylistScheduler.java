@@ -0,0 +1,135 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.List;
+
+// Keeps the compiled schedule for the latest response and a single timer
+// armed for its next boundary, so playlist switches happen on time without
+// re-evaluating anything in between.
+public class PlaylistScheduler {
+    private static final String TAG = "PlaylistScheduler";
+
+    public interface Listener {
+        void onActivePlaylistChanged(PlaylistModel active, PlaylistModel upcoming);
+
+        // Every time the schedule is (re)compiled
+        default void onScheduleCompiled(PlaylistSchedule schedule) {
+        }
+    }
+
+    private final Context context;
+    private final Listener listener;
+    private final Handler handler;
+    private final Runnable boundaryRunnable = this::evaluate;
+
+    private List<PlaylistModel> playlists;
+    private PlaylistSchedule schedule;
+    private String lastSignature;
+
+    // Wall-clock or time zone changes (NTP sync after boot, DST rules) move
+    // every boundary, so recompile instead of trusting the armed delay
+    private final BroadcastReceiver clockReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Log.d(TAG, "Clock changed (" + intent.getAction() + "), recompiling schedule");
+            handler.post(() -> {
+                if (playlists != null) {
+                    compile(playlists, System.currentTimeMillis());
+                    evaluate();
+                }
+            });
+        }
+    };
+
+    public PlaylistScheduler(Context context, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.listener = listener;
+
+        HandlerThread thread = new HandlerThread("playlist-scheduler", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        this.handler = new Handler(thread.getLooper());
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_TIME_CHANGED);
+        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        filter.addAction(Intent.ACTION_DATE_CHANGED);
+        this.context.registerReceiver(clockReceiver, filter, null, handler);
+    }
+
+    public void update(List<PlaylistModel> playlists) {
+        handler.post(() -> {
+            this.playlists = playlists;
+            compile(playlists, System.currentTimeMillis());
+            evaluate();
+        });
+    }
+
+    // Makes the next evaluation report the active playlist even if unchanged
+    public void reset() {
+        handler.post(() -> lastSignature = null);
+    }
+
+    public void shutdown() {
+        handler.removeCallbacks(boundaryRunnable);
+        try {
+            context.unregisterReceiver(clockReceiver);
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Clock receiver was not registered", e);
+        }
+        handler.getLooper().quitSafely();
+    }
+
+    private void evaluate() {
+        if (schedule == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (!schedule.covers(now)) {
+            compile(schedule.getPlaylists(), now);
+        }
+
+        PlaylistModel active = schedule.activeAt(now);
+        PlaylistModel upcoming = schedule.upcomingAfter(now);
+
+        String signature = signature(active) + "\n" + signature(upcoming);
+        if (!signature.equals(lastSignature)) {
+            lastSignature = signature;
+            Log.d(TAG, "Active playlist: " + (active.name != null ? active.name : "Default")
+                    + " (ID: " + active.id + ")");
+            listener.onActivePlaylistChanged(active, upcoming);
+        }
+
+        // Handler delays run on uptime; a woken-early timer just re-arms here
+        long delay = Math.max(schedule.nextBoundaryAfter(now) - now, 0);
+        handler.removeCallbacks(boundaryRunnable);
+        handler.postDelayed(boundaryRunnable, delay);
+    }
+
+    private void compile(List<PlaylistModel> playlists, long now) {
+        schedule = PlaylistSchedule.compile(playlists, now);
+        listener.onScheduleCompiled(schedule);
+    }
+
+    private static String signature(PlaylistModel playlist) {
+        if (playlist == null) {
+            return "";
+        }
+        StringBuilder builder = new StringBuilder(String.valueOf(playlist.id));
+        for (PlaylistModel.Asset asset : playlist.playableAssets()) {
+            builder.append('|').append(asset.filepath)
+                    .append(',').append(asset.filetype)
+                    .append(',').append(asset.durationSeconds)
+                    .append(',').append(asset.name);
+        }
+        return builder.toString();
+    }
+}
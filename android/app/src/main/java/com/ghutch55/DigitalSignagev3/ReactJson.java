@@ -0,0 +1,67 @@
+package com.ghutch55.DigitalSignagev3;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+
+// Converts the JSON payloads exchanged with the :sync process to and from
+// bridge types.
+public final class ReactJson {
+    private ReactJson() {
+    }
+
+    public static WritableMap toMap(JSONObject json) throws JSONException {
+        WritableMap map = Arguments.createMap();
+        Iterator<String> keys = json.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            Object value = json.get(key);
+            if (value instanceof JSONObject) {
+                map.putMap(key, toMap((JSONObject) value));
+            } else if (value instanceof JSONArray) {
+                map.putArray(key, toArray((JSONArray) value));
+            } else if (value instanceof Boolean) {
+                map.putBoolean(key, (Boolean) value);
+            } else if (value instanceof Number) {
+                map.putDouble(key, ((Number) value).doubleValue());
+            } else if (value == JSONObject.NULL) {
+                map.putNull(key);
+            } else {
+                map.putString(key, value.toString());
+            }
+        }
+        return map;
+    }
+
+    public static WritableArray toArray(JSONArray json) throws JSONException {
+        WritableArray array = Arguments.createArray();
+        for (int i = 0; i < json.length(); i++) {
+            Object value = json.get(i);
+            if (value instanceof JSONObject) {
+                array.pushMap(toMap((JSONObject) value));
+            } else if (value instanceof JSONArray) {
+                array.pushArray(toArray((JSONArray) value));
+            } else if (value instanceof Boolean) {
+                array.pushBoolean((Boolean) value);
+            } else if (value instanceof Number) {
+                array.pushDouble(((Number) value).doubleValue());
+            } else if (value == JSONObject.NULL) {
+                array.pushNull();
+            } else {
+                array.pushString(value.toString());
+            }
+        }
+        return array;
+    }
+
+    public static JSONArray fromArray(ReadableArray array) {
+        return new JSONArray(array.toArrayList());
+    }
+}
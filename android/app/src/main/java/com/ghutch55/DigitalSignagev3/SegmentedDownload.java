@@ -0,0 +1,282 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.IntSupplier;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+// Fetches one large asset as several byte ranges at once, each on its own
+// connection, written in place into the preallocated part file with
+// positional writes. A lossy link caps each TCP stream well below what the
+// link can carry; parallel streams recover most of the difference. Every
+// range resumes from its own journaled offset.
+public class SegmentedDownload {
+    private static final String TAG = "SegmentedDownload";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long CHECKPOINT_BYTES = 8 * 1024 * 1024;
+    private static final long PROGRESS_INTERVAL_MS = 250;
+    // How often run() checks whether a joined request made the transfer urgent
+    private static final long PROMOTE_CHECK_MS = 500;
+
+    public interface Progress {
+        // contiguousBytes: the prefix from byte 0 that is complete
+        void onProgress(long bytesDownloaded, long contiguousBytes);
+    }
+
+    // The server answered a range with the full body: the content behind the
+    // URL changed since the part file was started
+    public static class ContentChangedException extends IOException {
+        public ContentChangedException(String message) {
+            super(message);
+        }
+    }
+
+    private final OkHttpClient client;
+    private final AssetStore store;
+    private final ExecutorService executor;
+    private final ExecutorService urgentExecutor;
+    private final AssetCacheIndex.Download download;
+    private final File part;
+    private final BandwidthScheduler bandwidth;
+    // Read per chunk: a higher-priority request may join mid-transfer
+    private final IntSupplier priority;
+    private final Progress progress;
+    private final long segmentSize;
+    // Bytes written (not necessarily synced) within each segment
+    private final long[] offsets;
+
+    private FileChannel channel;
+    private volatile boolean aborted;
+    private volatile long lastCheckpointBytes;
+    private long lastReport;
+
+    public SegmentedDownload(OkHttpClient client, AssetStore store, ExecutorService executor,
+                             ExecutorService urgentExecutor, AssetCacheIndex.Download download,
+                             BandwidthScheduler bandwidth, IntSupplier priority, Progress progress) {
+        this.client = client;
+        this.store = store;
+        this.executor = executor;
+        this.urgentExecutor = urgentExecutor;
+        this.download = download;
+        this.part = store.partFile(download);
+        this.bandwidth = bandwidth;
+        this.priority = priority;
+        this.progress = progress;
+        this.offsets = download.segmentOffsets.clone();
+        this.segmentSize = (download.totalBytes + offsets.length - 1) / offsets.length;
+        this.lastCheckpointBytes = download.committedBytes;
+    }
+
+    // Returns once every range is in the part file and synced
+    public void run() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(part, "rw")) {
+            channel = file.getChannel();
+
+            boolean urgent = isUrgent();
+            List<FutureTask<Void>> segments = new ArrayList<>();
+            for (int i = 0; i < offsets.length; i++) {
+                int segment = i;
+                if (offsets[segment] < segmentLength(segment)) {
+                    FutureTask<Void> task = new FutureTask<>(() -> {
+                        fetchSegment(segment);
+                        return null;
+                    });
+                    segments.add(task);
+                    (urgent ? urgentExecutor : executor).execute(task);
+                }
+            }
+
+            IOException failure = null;
+            for (FutureTask<Void> segment : segments) {
+                try {
+                    while (true) {
+                        try {
+                            segment.get(PROMOTE_CHECK_MS, TimeUnit.MILLISECONDS);
+                            break;
+                        } catch (TimeoutException e) {
+                            if (!urgent && isUrgent()) {
+                                urgent = true;
+                                promote(segments);
+                            }
+                        }
+                    }
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof IOException
+                                ? (IOException) e.getCause()
+                                : new IOException("Segment failed", e.getCause());
+                    }
+                } catch (InterruptedException e) {
+                    aborted = true;
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Segmented download interrupted");
+                }
+            }
+
+            checkpoint();
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private boolean isUrgent() {
+        return priority.getAsInt() == AssetDownloadEngine.PRIORITY_URGENT;
+    }
+
+    // An urgent request joined: ranges still waiting in the shared pool are
+    // handed to the urgent lane too. A FutureTask runs at most once, so
+    // whichever pool reaches it first fetches it and the other skips it.
+    private void promote(List<FutureTask<Void>> segments) {
+        for (FutureTask<Void> segment : segments) {
+            if (!segment.isDone()) {
+                urgentExecutor.execute(segment);
+            }
+        }
+    }
+
+    private long segmentStart(int segment) {
+        return segment * segmentSize;
+    }
+
+    private long segmentLength(int segment) {
+        return Math.max(0, Math.min(segmentSize, download.totalBytes - segmentStart(segment)));
+    }
+
+    // One failed range stops the others at their next read, whichever range
+    // run() happens to be waiting on; ranges still queued don't start
+    private void fetchSegment(int segment) throws IOException {
+        if (aborted) {
+            throw new IOException("Aborted after another segment failed");
+        }
+        try {
+            fetchRange(segment);
+        } catch (IOException | RuntimeException e) {
+            aborted = true;
+            throw e;
+        }
+    }
+
+    private void fetchRange(int segment) throws IOException {
+        long position = segmentStart(segment) + offsets[segment];
+        long end = segmentStart(segment) + segmentLength(segment) - 1;
+
+        okhttp3.Request request = new okhttp3.Request.Builder()
+                .url(download.url)
+                .header("Range", "bytes=" + position + "-" + end)
+                .header("If-Range", download.validator())
+                .build();
+
+        try (Response response = client.newCall(request).execute()) {
+            if (response.code() == 200) {
+                throw new ContentChangedException("Content of " + download.url + " changed mid-download");
+            }
+            ResponseBody body = response.body();
+            String contentRange = response.header("Content-Range");
+            if (response.code() != 206 || body == null || contentRange == null
+                    || !contentRange.startsWith("bytes " + position + "-")) {
+                throw new IOException("Range " + position + "-" + end + " failed: " + response.code());
+            }
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try (InputStream in = body.byteStream()) {
+                int read;
+                while (position <= end && (read = in.read(buffer, 0,
+                        (int) Math.min(buffer.length, end - position + 1))) != -1) {
+                    if (aborted) {
+                        throw new IOException("Aborted after another segment failed");
+                    }
+                    ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                    while (chunk.hasRemaining()) {
+                        position += channel.write(chunk, position);
+                    }
+                    advance(segment, read);
+                    bandwidth.acquire(read, priority.getAsInt());
+                }
+            }
+        }
+
+        if (position != end + 1) {
+            throw new IOException("Range truncated at " + position + " of " + (end + 1));
+        }
+    }
+
+    // Written bytes (readable through the page cache even before a sync)
+    // from the start of the file up to the first unfinished range
+    public long contiguousBytes() {
+        synchronized (offsets) {
+            long bytes = 0;
+            for (int i = 0; i < offsets.length; i++) {
+                bytes += offsets[i];
+                if (offsets[i] < segmentLength(i)) {
+                    break;
+                }
+            }
+            return bytes;
+        }
+    }
+
+    private void advance(int segment, int bytes) throws IOException {
+        long total;
+        boolean report = false;
+        synchronized (offsets) {
+            offsets[segment] += bytes;
+            total = 0;
+            for (long offset : offsets) {
+                total += offset;
+            }
+            long now = SystemClock.elapsedRealtime();
+            if (now - lastReport >= PROGRESS_INTERVAL_MS) {
+                lastReport = now;
+                report = true;
+            }
+        }
+        if (report) {
+            progress.onProgress(total, contiguousBytes());
+        }
+        if (total - lastCheckpointBytes >= CHECKPOINT_BYTES) {
+            checkpoint();
+        }
+    }
+
+    // Offsets are snapshotted before the sync, so the journal never claims
+    // bytes that aren't on disk
+    private synchronized void checkpoint() throws IOException {
+        long[] snapshot;
+        synchronized (offsets) {
+            snapshot = offsets.clone();
+        }
+        long total = 0;
+        for (long offset : snapshot) {
+            total += offset;
+        }
+        if (total == lastCheckpointBytes) {
+            return;
+        }
+
+        channel.force(false);
+        if (download.validator() != null) {
+            store.checkpointSegments(download.url, snapshot);
+        }
+        lastCheckpointBytes = total;
+        Log.d(TAG, "Checkpointed " + total + " of " + download.totalBytes + " bytes of " + download.url);
+    }
+}
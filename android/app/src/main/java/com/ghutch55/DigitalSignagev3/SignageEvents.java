@@ -0,0 +1,28 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.util.Log;
+
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+
+public final class SignageEvents {
+    private static final String TAG = "SignageEvents";
+
+    private SignageEvents() {
+    }
+
+    // Safe to call from any thread, and before/after the JS instance exists
+    public static void emit(ReactContext context, String eventName, WritableMap params) {
+        if (!context.hasActiveReactInstance()) {
+            return;
+        }
+
+        try {
+            context.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                    .emit(eventName, params);
+        } catch (Exception e) {
+            Log.w(TAG, "Could not emit " + eventName, e);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.ghutch55.DigitalSignagev3;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+
+public final class SignageHttp {
+    public static final String USER_AGENT = "SignageApp/2.0 (Android TV Box)";
+
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    private static OkHttpClient client;
+
+    private SignageHttp() {
+    }
+
+    // One client (and therefore one connection pool) for every native component
+    // that talks to the signage server, so parallel downloads reuse warm connections.
+    public static synchronized OkHttpClient client() {
+        if (client == null) {
+            client = new OkHttpClient.Builder()
+                    .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                    .connectTimeout(15, TimeUnit.SECONDS)
+                    .readTimeout(30, TimeUnit.SECONDS)
+                    .retryOnConnectionFailure(true)
+                    .addInterceptor(chain -> {
+                        Request request = chain.request();
+                        if (request.header("User-Agent") == null) {
+                            request = request.newBuilder()
+                                    .header("User-Agent", USER_AGENT)
+                                    .build();
+                        }
+                        return chain.proceed(request);
+                    })
+                    .build();
+        }
+        return client;
+    }
+}
@@ -0,0 +1,86 @@
+package com.ghutch55.DigitalSignagev3;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+
+import org.json.JSONObject;
+
+public class SignagePlayerModule extends ReactContextBaseJavaModule {
+    private static final String MODULE_NAME = "SignagePlayerModule";
+
+    public SignagePlayerModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+    }
+
+    @Override
+    public String getName() {
+        return MODULE_NAME;
+    }
+
+    // Transition latency (boundary to swap) and failure counts of the native player
+    @ReactMethod
+    public void getPlaybackMetrics(Promise promise) {
+        try {
+            promise.resolve(Arguments.fromBundle(PlaybackMetrics.snapshot()));
+        } catch (Exception e) {
+            promise.reject("PLAYBACK_METRICS_ERROR", "Error reading playback metrics: " + e.getMessage());
+        }
+    }
+
+    // Called for every rendered asset with how long it stays on screen; the
+    // sync service relaunches the app only after these stop for a whole
+    // stall window beyond that
+    @ReactMethod
+    public void heartbeat(double itemDurationSeconds) {
+        SignageSyncClient.getInstance(getReactApplicationContext())
+                .call(s -> s.heartbeat((long) (itemDurationSeconds * 1000)));
+        BootTimings.markFirstFrame(getReactApplicationContext());
+    }
+
+    @ReactMethod
+    public void configureWatchdog(double stallWindowSeconds) {
+        SignageSyncClient.getInstance(getReactApplicationContext())
+                .call(s -> s.configureWatchdog((long) (stallWindowSeconds * 1000)));
+    }
+
+    @ReactMethod
+    public void getWatchdogStatus(Promise promise) {
+        SignageSyncClient.getInstance(getReactApplicationContext()).call(s -> {
+            try {
+                promise.resolve(ReactJson.toMap(new JSONObject(s.getWatchdogStatus())));
+            } catch (Exception e) {
+                promise.reject("WATCHDOG_STATUS_ERROR", "Error reading watchdog status: " + e.getMessage());
+            }
+        });
+    }
+
+    // Base URL the WebView loads cached objects from instead of file://
+    @ReactMethod
+    public void getAssetServerUrl(Promise promise) {
+        try {
+            promise.resolve(LocalAssetServer.getInstance(getReactApplicationContext()).getBaseUrl());
+        } catch (Exception e) {
+            promise.reject("ASSET_SERVER_ERROR", "Error starting asset server: " + e.getMessage());
+        }
+    }
+
+    // Request counts, bytes and per-request latency of the asset server
+    @ReactMethod
+    public void getAssetServerMetrics(Promise promise) {
+        try {
+            promise.resolve(Arguments.fromBundle(
+                    LocalAssetServer.getInstance(getReactApplicationContext()).snapshot()));
+        } catch (Exception e) {
+            promise.reject("ASSET_SERVER_ERROR", "Error reading asset server metrics: " + e.getMessage());
+        }
+    }
+
+    // The React UI has content on screen; stop the native cold-start player
+    @ReactMethod
+    public void dismissInstantOn() {
+        InstantOnPlayer.dismiss();
+    }
+}
@@ -0,0 +1,579 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.drawable.Animatable;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Gravity;
+import android.view.SurfaceView;
+import android.view.View;
+import android.widget.FrameLayout;
+import android.widget.ImageView;
+
+import androidx.annotation.OptIn;
+import androidx.media3.common.MediaItem;
+import androidx.media3.common.PlaybackException;
+import androidx.media3.common.Player;
+import androidx.media3.common.VideoSize;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.exoplayer.DefaultRenderersFactory;
+import androidx.media3.exoplayer.ExoPlayer;
+import androidx.media3.exoplayer.source.ProgressiveMediaSource;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Plays the cached image/video rotation natively. Video goes through Media3's
+// MediaCodec renderers straight into a SurfaceView, so frames are composited
+// by the hardware overlay instead of being copied through Chromium.
+//
+// Two slots alternate: while one is on screen the other prepares the next
+// asset off screen up to its first decoded frame, and the two are swapped
+// in a single layout pass at the duration boundary.
+@OptIn(markerClass = UnstableApi.class)
+public class SignagePlayerView extends FrameLayout {
+    private static final String TAG = "SignagePlayerView";
+    private static final long MIN_DURATION_MS = 1000;
+    private static final long SKIP_DELAY_MS = 250;
+    private static final long LOAD_TIMEOUT_MS = 10000;
+    // Upcoming slides kept decoded in RAM beyond the one being prerolled
+    private static final int PRELOAD_SLIDES = 3;
+
+    public static class Item {
+        public final String type;
+        public final String url;
+        public final long durationMs;
+        public final String name;
+        // Remote URL; a streamed video and its cached copy share it
+        public final String source;
+
+        public Item(String type, String url, long durationMs, String name, String source) {
+            this.type = type;
+            this.url = url;
+            this.durationMs = durationMs;
+            this.name = name;
+            this.source = source;
+        }
+
+        boolean isVideo() {
+            return AssetDownloadEngine.TYPE_VIDEO.equals(type);
+        }
+
+        boolean sameAs(Item other) {
+            return type.equals(other.type) && url.equals(other.url) && durationMs == other.durationMs;
+        }
+
+        // The same asset, possibly at a different local URL
+        boolean sameSource(Item other) {
+            return source != null && source.equals(other.source) && type.equals(other.type);
+        }
+    }
+
+    public interface Listener {
+        void onAssetStarted(int index, Item item);
+
+        void onAssetFailed(int index, Item item, String message);
+    }
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService decoder = Executors.newSingleThreadExecutor(r -> new Thread(r, "player-decode"));
+    // Only touched on the decoder thread
+    private final SlideImageLoader imageLoader;
+    // Videos handed over while still downloading
+    private final ProgressiveMediaSource.Factory streamSources;
+    private final Runnable boundaryRunnable = this::onBoundary;
+    private final Runnable prepareRunnable = this::prepareStandby;
+
+    private final Runnable measureAndLayout = () -> {
+        measure(MeasureSpec.makeMeasureSpec(getWidth(), MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(getHeight(), MeasureSpec.EXACTLY));
+        layout(getLeft(), getTop(), getRight(), getBottom());
+    };
+
+    private Listener listener;
+    private List<Item> items = new ArrayList<>();
+    // On screen, and off screen preparing the next asset
+    private Slot active;
+    private Slot standby;
+    private int standbyIndex;
+    // When the item on screen was due to end; transition latency is measured from here
+    private long boundaryAt;
+    private boolean swapPending;
+    private boolean released;
+
+    private class Slot implements Player.Listener {
+        final FrameLayout container;
+        final SurfaceView surfaceView;
+        final ImageView imageView;
+        final Runnable timeoutRunnable = () -> onSlotFailed(this, "Load timeout");
+
+        ExoPlayer player;
+        int index = -1;
+        Item item;
+        boolean ready;
+        // The hardware decoder is held by the other slot; retried at the boundary
+        boolean decoderBusy;
+        // Bumped on every load so late decode/player callbacks are ignored
+        int token;
+
+        Slot(Context context) {
+            container = new FrameLayout(context);
+            container.setBackgroundColor(Color.BLACK);
+
+            surfaceView = new SurfaceView(context);
+            container.addView(surfaceView,
+                    new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT, Gravity.CENTER));
+
+            // Drawn over the surface; hidden while the slot shows a video
+            imageView = new ImageView(context);
+            imageView.setScaleType(ImageView.ScaleType.FIT_CENTER);
+            imageView.setBackgroundColor(Color.BLACK);
+            container.addView(imageView, new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+        }
+
+        void createPlayer() {
+            // Hardware decoders are preferred by default; the fallback lets a
+            // second decoder take over if the first one fails to initialise
+            DefaultRenderersFactory renderersFactory = new DefaultRenderersFactory(getContext())
+                    .setEnableDecoderFallback(true);
+            player = new ExoPlayer.Builder(getContext(), renderersFactory).build();
+            player.setVolume(0f);
+            player.setRepeatMode(Player.REPEAT_MODE_OFF);
+            player.setVideoSurfaceView(surfaceView);
+            player.addListener(this);
+        }
+
+        void releasePlayer() {
+            reset();
+            if (player != null) {
+                player.removeListener(this);
+                player.release();
+                player = null;
+            }
+        }
+
+        // Prepares the item paused; `ready` once its first frame is on the surface
+        void load(int index, Item item) {
+            reset();
+            this.index = index;
+            this.item = item;
+            int loadToken = token;
+            handler.postDelayed(timeoutRunnable, LOAD_TIMEOUT_MS);
+
+            if (item.isVideo()) {
+                imageView.setVisibility(View.GONE);
+                MediaItem mediaItem = MediaItem.fromUri(Uri.parse(item.url));
+                if (GrowingFileDataSource.isStreamUrl(item.url)) {
+                    player.setMediaSource(streamSources.createMediaSource(mediaItem));
+                } else {
+                    player.setMediaItem(mediaItem);
+                }
+                player.setPlayWhenReady(false);
+                player.prepare();
+            } else if (AssetDownloadEngine.TYPE_IMAGE.equals(item.type)) {
+                decoder.execute(() -> {
+                    String path = pathOf(item);
+                    Drawable drawable = imageLoader.playsAnimated(path) ? imageLoader.loadAnimated(path) : null;
+                    Bitmap bitmap = drawable == null ? imageLoader.load(path) : null;
+                    handler.post(() -> {
+                        if (loadToken != token) {
+                            return;
+                        }
+                        if (drawable != null) {
+                            imageView.setImageDrawable(drawable);
+                        } else if (bitmap != null) {
+                            imageView.setImageBitmap(bitmap);
+                        } else {
+                            onSlotFailed(this, "Image failed to load");
+                            return;
+                        }
+                        imageView.setVisibility(View.VISIBLE);
+                        markReady();
+                    });
+                });
+            } else {
+                handler.post(() -> {
+                    if (loadToken == token) {
+                        onSlotFailed(this, "Unsupported content type: " + item.type);
+                    }
+                });
+            }
+        }
+
+        void reset() {
+            token++;
+            ready = false;
+            decoderBusy = false;
+            handler.removeCallbacks(timeoutRunnable);
+            if (imageView.getDrawable() instanceof Animatable) {
+                ((Animatable) imageView.getDrawable()).stop();
+            }
+            // Lets the loader hand the bitmap back to its pool
+            imageView.setImageBitmap(null);
+            if (player != null) {
+                player.stop();
+                player.clearMediaItems();
+            }
+        }
+
+        void play() {
+            if (item.isVideo()) {
+                player.play();
+            } else if (imageView.getDrawable() instanceof Animatable) {
+                // Held on its first frame until it is on screen
+                ((Animatable) imageView.getDrawable()).start();
+            }
+        }
+
+        // Off-screen slots keep their surface (hiding a SurfaceView would
+        // destroy it), they are just translated out of the visible area
+        void setOnScreen(boolean onScreen) {
+            container.setTranslationX(onScreen ? 0 : Math.max(getWidth(), 1));
+        }
+
+        private void markReady() {
+            handler.removeCallbacks(timeoutRunnable);
+            ready = true;
+            onSlotReady(this);
+        }
+
+        @Override
+        public void onRenderedFirstFrame() {
+            if (item != null && item.isVideo() && !ready) {
+                markReady();
+            }
+        }
+
+        @Override
+        public void onVideoSizeChanged(VideoSize videoSize) {
+            fitVideo(this, videoSize);
+        }
+
+        @Override
+        public void onPlayerError(PlaybackException error) {
+            if (!ready && error.errorCode == PlaybackException.ERROR_CODE_DECODER_INIT_FAILED
+                    && this == standby && InstantOnPlayer.yieldDecoder(SignagePlayerView.this)) {
+                // The cold-start overlay held it; it is gone now, so retry
+                Log.d(TAG, "Decoder held by instant-on playback, taking over");
+                handler.removeCallbacks(timeoutRunnable);
+                reset();
+                handler.removeCallbacks(prepareRunnable);
+                handler.postDelayed(prepareRunnable, SKIP_DELAY_MS);
+                return;
+            }
+            if (!ready && error.errorCode == PlaybackException.ERROR_CODE_DECODER_INIT_FAILED
+                    && this == standby && active.item != null && active.item.isVideo()) {
+                Log.d(TAG, "Decoder busy, deferring preparation to the boundary");
+                decoderBusy = true;
+                handler.removeCallbacks(timeoutRunnable);
+                return;
+            }
+            Log.e(TAG, "Playback error: " + error.getErrorCodeName(), error);
+            onSlotFailed(this, "Video playback failed");
+        }
+    }
+
+    public SignagePlayerView(Context context) {
+        super(context);
+        setBackgroundColor(Color.BLACK);
+        imageLoader = new SlideImageLoader(context);
+        streamSources = new ProgressiveMediaSource.Factory(
+                new GrowingFileDataSource.Factory(SignageSyncClient.getInstance(context)::getDownloadFrontier));
+
+        active = new Slot(context);
+        standby = new Slot(context);
+        addView(active.container, new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+        addView(standby.container, new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+        standby.setOnScreen(false);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    // Restarts the rotation only when the list actually changed, and not
+    // even then if the asset on screen is still part of it
+    public void setItems(List<Item> newItems) {
+        if (sameItems(newItems)) {
+            return;
+        }
+        items = new ArrayList<>(newItems);
+        if (active.player == null) {
+            return;
+        }
+        int position = active.item != null ? indexOf(active.item) : -1;
+        if (position >= 0) {
+            continueFrom(position);
+        } else {
+            restart();
+        }
+    }
+
+    // The asset on screen, null before the first one
+    public Item currentItem() {
+        return active.item;
+    }
+
+    public void release() {
+        released = true;
+        stopPlayback();
+        decoder.execute(imageLoader::clear);
+        decoder.shutdown();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (released || active.player != null) {
+            return;
+        }
+        active.createPlayer();
+        standby.createPlayer();
+        restart();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        stopPlayback();
+        super.onDetachedFromWindow();
+    }
+
+    // React Native lays out its own views only; native children need a manual pass
+    @Override
+    public void requestLayout() {
+        super.requestLayout();
+        post(measureAndLayout);
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        standby.setOnScreen(false);
+        for (Slot slot : new Slot[]{active, standby}) {
+            if (slot.player != null) {
+                fitVideo(slot, slot.player.getVideoSize());
+            }
+        }
+    }
+
+    private void stopPlayback() {
+        handler.removeCallbacks(boundaryRunnable);
+        handler.removeCallbacks(prepareRunnable);
+        swapPending = false;
+        active.releasePlayer();
+        standby.releasePlayer();
+        active.item = null;
+        standby.item = null;
+    }
+
+    // The new list starts on the standby slot and swaps in as soon as its
+    // first asset is ready, so whatever is on screen keeps playing until then
+    private void restart() {
+        handler.removeCallbacks(boundaryRunnable);
+        handler.removeCallbacks(prepareRunnable);
+        standby.reset();
+        if (items.isEmpty()) {
+            swapPending = false;
+            return;
+        }
+
+        swapPending = true;
+        boundaryAt = SystemClock.uptimeMillis();
+        standbyIndex = 0;
+        // Taking over from the cold-start overlay: carry on with the asset
+        // after the one it shows instead of starting the loop again
+        Item overlayItem = active.item == null ? InstantOnPlayer.currentItem(this) : null;
+        int overlayPosition = overlayItem != null ? indexOf(overlayItem) : -1;
+        if (overlayPosition >= 0) {
+            standbyIndex = (overlayPosition + 1) % items.size();
+        }
+        prepareStandby();
+    }
+
+    // Items joined or left around the asset on screen (e.g. downloads landing
+    // during a progressive start): keep playing it and re-aim the preroll at
+    // whatever now follows it
+    private void continueFrom(int position) {
+        active.index = position;
+        active.item = items.get(position);
+        int next = (position + 1) % items.size();
+        boolean standbyCurrent = standby.ready && standby.index == next
+                && standby.item.sameAs(items.get(next));
+        standbyIndex = next;
+        if (!standbyCurrent) {
+            handler.removeCallbacks(prepareRunnable);
+            standby.reset();
+            prepareStandby();
+        }
+        preloadImages();
+    }
+
+    private void prepareStandby() {
+        if (standbyIndex < items.size()) {
+            standby.load(standbyIndex, items.get(standbyIndex));
+        }
+    }
+
+    private void onBoundary() {
+        swapPending = true;
+        if (standby.ready) {
+            swap();
+        } else if (standby.decoderBusy) {
+            // Free the decoder the outgoing video holds; it keeps its last frame
+            active.player.stop();
+            prepareStandby();
+        }
+    }
+
+    private void onSlotReady(Slot slot) {
+        if (slot == standby && swapPending) {
+            swap();
+        }
+    }
+
+    private void onSlotFailed(Slot slot, String message) {
+        Log.w(TAG, message + ": " + slot.item.url);
+        PlaybackMetrics.recordFailure();
+        if (listener != null) {
+            listener.onAssetFailed(slot.index, slot.item, message);
+        }
+
+        if (slot == standby) {
+            standbyIndex = (slot.index + 1) % items.size();
+            slot.reset();
+            handler.removeCallbacks(prepareRunnable);
+            handler.postDelayed(prepareRunnable, SKIP_DELAY_MS);
+        } else {
+            // The asset on screen broke mid-play; move on as if its time was up
+            handler.removeCallbacks(boundaryRunnable);
+            boundaryAt = SystemClock.uptimeMillis();
+            onBoundary();
+        }
+    }
+
+    private void swap() {
+        swapPending = false;
+        long now = SystemClock.uptimeMillis();
+        boolean firstFrame = active.item == null;
+
+        Slot incoming = standby;
+        incoming.setOnScreen(true);
+        incoming.play();
+        active.setOnScreen(false);
+        active.reset();
+        standby = active;
+        active = incoming;
+
+        if (!firstFrame) {
+            PlaybackMetrics.recordTransition(now - boundaryAt);
+        }
+        Item item = active.item;
+        Log.d(TAG, "Displaying: " + (item.name != null ? item.name : "Item " + (active.index + 1))
+                + " (" + item.type + "), " + (now - boundaryAt) + " ms after boundary");
+
+        boundaryAt = now + Math.max(item.durationMs, MIN_DURATION_MS);
+        handler.postAtTime(boundaryRunnable, boundaryAt);
+        if (listener != null) {
+            listener.onAssetStarted(active.index, item);
+        }
+
+        // Preroll the following asset while this one plays
+        standbyIndex = (active.index + 1) % items.size();
+        prepareStandby();
+        preloadImages();
+    }
+
+    // Queued behind the standby decode: drop slides that are no longer on
+    // screen or upcoming, then decode the next few so later swaps hit RAM
+    private void preloadImages() {
+        Set<String> keep = new LinkedHashSet<>();
+        List<String> upcoming = new ArrayList<>();
+        for (Slot slot : new Slot[]{active, standby}) {
+            if (slot.item != null && !slot.item.isVideo()) {
+                keep.add(pathOf(slot.item));
+            }
+        }
+        for (int i = 1; i <= PRELOAD_SLIDES && i < items.size(); i++) {
+            Item item = items.get((standbyIndex + i) % items.size());
+            if (AssetDownloadEngine.TYPE_IMAGE.equals(item.type)) {
+                keep.add(pathOf(item));
+                upcoming.add(pathOf(item));
+            }
+        }
+
+        decoder.execute(() -> {
+            imageLoader.retain(keep);
+            for (String path : upcoming) {
+                if (!imageLoader.playsAnimated(path)) {
+                    imageLoader.load(path);
+                }
+            }
+        });
+    }
+
+    private static String pathOf(Item item) {
+        return Uri.parse(item.url).getPath();
+    }
+
+    // object-fit: contain for the surface, which otherwise stretches to the view
+    private void fitVideo(Slot slot, VideoSize videoSize) {
+        int width = getWidth();
+        int height = getHeight();
+        if (videoSize.width == 0 || videoSize.height == 0 || width == 0 || height == 0) {
+            return;
+        }
+
+        float videoAspect = videoSize.width * videoSize.pixelWidthHeightRatio / videoSize.height;
+        int fittedWidth = width;
+        int fittedHeight = Math.round(width / videoAspect);
+        if (fittedHeight > height) {
+            fittedHeight = height;
+            fittedWidth = Math.round(height * videoAspect);
+        }
+
+        LayoutParams params = (LayoutParams) slot.surfaceView.getLayoutParams();
+        if (params.width != fittedWidth || params.height != fittedHeight) {
+            params.width = fittedWidth;
+            params.height = fittedHeight;
+            slot.surfaceView.setLayoutParams(params);
+        }
+    }
+
+    private int indexOf(Item item) {
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i).sameAs(item)) {
+                return i;
+            }
+        }
+        // A streamed video that finished downloading: it keeps playing from
+        // the open handle and the cached URL is used from the next loop on
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i).sameSource(item)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean sameItems(List<Item> newItems) {
+        if (newItems.size() != items.size()) {
+            return false;
+        }
+        for (int i = 0; i < newItems.size(); i++) {
+            if (!newItems.get(i).sameAs(items.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
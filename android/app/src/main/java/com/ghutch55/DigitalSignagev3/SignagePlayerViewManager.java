@@ -0,0 +1,83 @@
+package com.ghutch55.DigitalSignagev3;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.uimanager.SimpleViewManager;
+import com.facebook.react.uimanager.ThemedReactContext;
+import com.facebook.react.uimanager.annotations.ReactProp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SignagePlayerViewManager extends SimpleViewManager<SignagePlayerView> {
+    private static final String VIEW_NAME = "SignagePlayerView";
+    private static final String STARTED_EVENT = "SignagePlayerAssetStarted";
+    private static final String FAILED_EVENT = "SignagePlayerAssetFailed";
+
+    @Override
+    public String getName() {
+        return VIEW_NAME;
+    }
+
+    @Override
+    protected SignagePlayerView createViewInstance(ThemedReactContext context) {
+        ReactContext reactContext = context.getReactApplicationContext();
+        SignagePlayerView view = new SignagePlayerView(context);
+        view.setListener(new SignagePlayerView.Listener() {
+            @Override
+            public void onAssetStarted(int index, SignagePlayerView.Item item) {
+                SignageEvents.emit(reactContext, STARTED_EVENT, toEvent(index, item, null));
+            }
+
+            @Override
+            public void onAssetFailed(int index, SignagePlayerView.Item item, String message) {
+                SignageEvents.emit(reactContext, FAILED_EVENT, toEvent(index, item, message));
+            }
+        });
+        return view;
+    }
+
+    @Override
+    public void onDropViewInstance(SignagePlayerView view) {
+        super.onDropViewInstance(view);
+        view.release();
+    }
+
+    // The LocalAsset list produced by AssetDownloadModule
+    @ReactProp(name = "assets")
+    public void setAssets(SignagePlayerView view, @Nullable ReadableArray assets) {
+        List<SignagePlayerView.Item> items = new ArrayList<>();
+        if (assets != null) {
+            for (int i = 0; i < assets.size(); i++) {
+                ReadableMap asset = assets.getMap(i);
+                if (asset == null || !asset.hasKey("type") || !asset.hasKey("url")) {
+                    continue;
+                }
+                items.add(new SignagePlayerView.Item(
+                        asset.getString("type"),
+                        asset.getString("url"),
+                        asset.hasKey("duration") ? Math.round(asset.getDouble("duration") * 1000) : 0,
+                        asset.hasKey("name") && !asset.isNull("name") ? asset.getString("name") : null,
+                        asset.hasKey("source") && !asset.isNull("source") ? asset.getString("source") : null));
+            }
+        }
+        view.setItems(items);
+    }
+
+    private static WritableMap toEvent(int index, SignagePlayerView.Item item, @Nullable String message) {
+        WritableMap event = Arguments.createMap();
+        event.putInt("index", index);
+        event.putString("url", item.url);
+        event.putString("type", item.type);
+        event.putDouble("duration", item.durationMs / 1000.0);
+        if (message != null) {
+            event.putString("message", message);
+        }
+        return event;
+    }
+}
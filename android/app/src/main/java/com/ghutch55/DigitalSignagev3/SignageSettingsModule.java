@@ -0,0 +1,60 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+
+// TurboModule implementation of specs/NativeSignageSettings.ts. Every read
+// is synchronous over JSI and served from SharedPreferences (held in memory
+// after the first load), so startup gets the device identity without an
+// async bridge round-trip. New architecture only; see SignageSettingsPackage.
+public class SignageSettingsModule extends NativeSignageSettingsSpec {
+    private static final String PREFS = "signage_settings";
+    private static final String KEY_DEVICE_NAME = "device_name";
+    // Config keys live under their own prefix so they can't collide with
+    // the identity entries
+    private static final String CONFIG_PREFIX = "config.";
+
+    private final SharedPreferences prefs;
+
+    public SignageSettingsModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+        prefs = reactContext.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    @Override
+    @Nullable
+    public String getSavedDeviceName() {
+        return prefs.getString(KEY_DEVICE_NAME, null);
+    }
+
+    @Override
+    @Nullable
+    public String getSystemDeviceName() {
+        String name = AndroidSettingsModule.readDeviceName(getReactApplicationContext());
+        return name != null && !name.isEmpty() ? name : null;
+    }
+
+    @Override
+    public void saveDeviceName(String name) {
+        prefs.edit().putString(KEY_DEVICE_NAME, name).apply();
+    }
+
+    @Override
+    @Nullable
+    public String getConfigValue(String key) {
+        return prefs.getString(CONFIG_PREFIX + key, null);
+    }
+
+    @Override
+    public void setConfigValue(String key, @Nullable String value) {
+        if (value == null) {
+            prefs.edit().remove(CONFIG_PREFIX + key).apply();
+        } else {
+            prefs.edit().putString(CONFIG_PREFIX + key, value).apply();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.ghutch55.DigitalSignagev3;
+
+import com.facebook.react.BaseReactPackage;
+import com.facebook.react.bridge.NativeModule;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.module.model.ReactModuleInfo;
+import com.facebook.react.module.model.ReactModuleInfoProvider;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Registers the SignageSettings TurboModule; only added on new-architecture
+// builds (MainApplication), old-architecture builds use AndroidSettingsPackage
+public class SignageSettingsPackage extends BaseReactPackage {
+    @Override
+    public NativeModule getModule(String name, ReactApplicationContext reactContext) {
+        if (SignageSettingsModule.NAME.equals(name)) {
+            return new SignageSettingsModule(reactContext);
+        }
+        return null;
+    }
+
+    @Override
+    public ReactModuleInfoProvider getReactModuleInfoProvider() {
+        return () -> {
+            Map<String, ReactModuleInfo> modules = new HashMap<>();
+            modules.put(SignageSettingsModule.NAME, new ReactModuleInfo(
+                    SignageSettingsModule.NAME,
+                    SignageSettingsModule.class.getName(),
+                    false, // canOverrideExistingModule
+                    false, // needsEagerInit
+                    false, // isCxxModule
+                    true // isTurboModule
+            ));
+            return modules;
+        };
+    }
+}
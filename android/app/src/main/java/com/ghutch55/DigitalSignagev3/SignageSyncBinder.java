@@ -0,0 +1,411 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.os.RemoteCallbackList;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.Request;
+import okhttp3.Response;
+
+// Everything that does network or disk work for the player: playlist
+// polling and scheduling, downloads and cache maintenance. Lives in the
+// :sync process behind AutoStartService, so it survives UI crashes and its
+// I/O and GC never compete with rendering.
+public class SignageSyncBinder extends ISignageSync.Stub
+        implements PlaylistPoller.Listener, PlaylistScheduler.Listener {
+    private static final String TAG = "SignageSyncBinder";
+    private static final String CACHE_DIR_NAME = "signage_cache";
+    private static final int MAX_PARALLEL_DOWNLOADS = 4;
+    private static final String PREFS_NAME = "signage_cache";
+    private static final String KEY_STREAM_BUFFER_BYTES = "stream_buffer_bytes";
+    private static final String KEY_PREFETCH_HORIZON_MS = "prefetch_horizon_ms";
+    private static final String KEY_RATE_LIMIT_BYTES = "rate_limit_bytes_per_sec";
+    private static final String KEY_OFF_PEAK_WINDOWS = "off_peak_windows";
+    // Leading assets of each list that preempt other downloads: whatever
+    // has to be on screen first
+    private static final int URGENT_ASSETS = 1;
+    private static final int NETWORK_WARM_ATTEMPTS = 10;
+    private static final long NETWORK_WARM_RETRY_MS = 2000;
+
+    private interface Broadcast {
+        void send(ISignageSyncCallback callback) throws RemoteException;
+    }
+
+    private final Context context;
+    private final RemoteCallbackList<ISignageSyncCallback> callbacks = new RemoteCallbackList<>();
+    private final CacheBudgetManager budget;
+    private final AssetDownloadEngine engine;
+    private final CacheReconciler reconciler;
+    private final PlaylistPoller poller;
+    private final PlaylistScheduler scheduler;
+    private final PlaylistPrefetcher prefetcher;
+    // elapsedRealtime when start-up warm-up finished, 0 until then
+    private volatile long indexWarmAt;
+    private volatile long networkWarmAt;
+    private volatile boolean shutDown;
+
+    public SignageSyncBinder(Context context) {
+        this.context = context.getApplicationContext();
+
+        // Same directory expo-file-system resolves for `${documentDirectory}signage_cache/`
+        File cacheDir = new File(this.context.getFilesDir(), CACHE_DIR_NAME);
+        AssetStore store = new AssetStore(cacheDir, AssetCacheIndex.getInstance(this.context));
+        budget = new CacheBudgetManager(this.context, store);
+        engine = new AssetDownloadEngine(store, budget, SignageHttp.client(), MAX_PARALLEL_DOWNLOADS,
+                this::broadcastProgress);
+        engine.setStreamBufferBytes(prefs().getLong(KEY_STREAM_BUFFER_BYTES,
+                AssetDownloadEngine.DEFAULT_STREAM_BUFFER_BYTES));
+        try {
+            engine.configureBandwidth(prefs().getLong(KEY_RATE_LIMIT_BYTES, 0),
+                    prefs().getString(KEY_OFF_PEAK_WINDOWS, ""));
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Ignoring stored bandwidth settings", e);
+        }
+        reconciler = new CacheReconciler(store, budget, engine);
+        prefetcher = new PlaylistPrefetcher(store, budget, engine);
+        prefetcher.setHorizonMs(prefs().getLong(KEY_PREFETCH_HORIZON_MS, PlaylistPrefetcher.DEFAULT_HORIZON_MS));
+        poller = new PlaylistPoller(SignageHttp.client(), this);
+        scheduler = new PlaylistScheduler(this.context, this);
+
+        new Thread(this::warmUp, "sync-warmup").start();
+    }
+
+    public void shutdown() {
+        shutDown = true;
+        poller.shutdown();
+        scheduler.shutdown();
+        prefetcher.shutdown();
+        engine.shutdown();
+        reconciler.shutdown();
+        callbacks.kill();
+    }
+
+    @Override
+    public void registerCallback(ISignageSyncCallback callback) {
+        callbacks.register(callback);
+    }
+
+    @Override
+    public void unregisterCallback(ISignageSyncCallback callback) {
+        callbacks.unregister(callback);
+    }
+
+    @Override
+    public void startPolling(String deviceName, long intervalMs, long retryDelayMs) {
+        scheduler.reset();
+        poller.start(deviceName, intervalMs, retryDelayMs);
+    }
+
+    @Override
+    public void stopPolling() {
+        poller.stop();
+    }
+
+    @Override
+    public void pollNow() {
+        poller.pollNow();
+    }
+
+    // Every asset is checked with the server (conditional requests for the
+    // cached ones); without revalidate, cached copies are shown meanwhile
+    @Override
+    public void downloadAssets(int requestId, String assetsJson, boolean revalidate) {
+        try {
+            JSONArray assets = new JSONArray(assetsJson);
+            List<AssetDownloadEngine.Request> requests = new ArrayList<>();
+            for (int i = 0; i < assets.length(); i++) {
+                requests.add(toRequest(i, assets.getJSONObject(i)));
+            }
+
+            reconciler.reconcile(requests, revalidate, new AssetDownloadEngine.Ready() {
+                @Override
+                public void onReady(AssetDownloadEngine.Result result) {
+                    String json = toLocalAsset(result).toString();
+                    broadcast(callback -> callback.onAssetReady(requestId, result.request.index, json));
+                }
+
+                // Same event; the cached copy replaces it at the same index
+                @Override
+                public void onStreamable(AssetDownloadEngine.Result result) {
+                    onReady(result);
+                }
+            }, results -> {
+                JSONArray localAssets = new JSONArray();
+                for (AssetDownloadEngine.Result result : results) {
+                    if (result.isSuccess()) {
+                        localAssets.put(toLocalAsset(result));
+                    }
+                }
+                String json = localAssets.toString();
+                broadcast(callback -> callback.onDownloadComplete(requestId, json));
+            });
+        } catch (JSONException e) {
+            Log.e(TAG, "Invalid asset list", e);
+            broadcast(callback -> callback.onDownloadComplete(requestId, null));
+        }
+    }
+
+    @Override
+    public void configureCache(long byteBudget, long freeSpaceFloor) {
+        budget.configure(byteBudget, freeSpaceFloor);
+    }
+
+    // Remote URLs of the next scheduled playlist, protected from eviction
+    @Override
+    public void setScheduledAssets(List<String> urls) {
+        budget.setScheduledUrls(urls);
+    }
+
+    @Override
+    public void markAssetPlayed(String localUrl) {
+        try {
+            budget.markPlayed(localUrl);
+        } catch (Exception e) {
+            Log.w(TAG, "Could not record playback of " + localUrl, e);
+        }
+    }
+
+    @Override
+    public String getCacheMetrics() {
+        return toJson(budget.getMetrics()).toString();
+    }
+
+    @Override
+    public void configureStreaming(long startBufferBytes) {
+        prefs().edit().putLong(KEY_STREAM_BUFFER_BYTES, startBufferBytes).apply();
+        engine.setStreamBufferBytes(startBufferBytes);
+    }
+
+    @Override
+    public void configurePrefetch(long horizonMs) {
+        prefs().edit().putLong(KEY_PREFETCH_HORIZON_MS, horizonMs).apply();
+        prefetcher.setHorizonMs(horizonMs);
+    }
+
+    // Validated before anything is stored; a bad window spec reaches the
+    // caller as IllegalArgumentException
+    @Override
+    public void configureBandwidth(long bytesPerSecond, String offPeakWindows) {
+        engine.configureBandwidth(bytesPerSecond, offPeakWindows);
+        prefs().edit()
+                .putLong(KEY_RATE_LIMIT_BYTES, bytesPerSecond)
+                .putString(KEY_OFF_PEAK_WINDOWS, offPeakWindows)
+                .apply();
+    }
+
+    @Override
+    public String getDownloadMetrics() {
+        return toJson(engine.getMetrics()).toString();
+    }
+
+    @Override
+    public long getDownloadFrontier(String partPath) {
+        return engine.frontier(new File(partPath).getName());
+    }
+
+    // Milestones for BootTimings, which only the UI process writes
+    @Override
+    public String getWarmupTimings() {
+        JSONObject timings = new JSONObject();
+        try {
+            if (indexWarmAt > 0) {
+                timings.put(BootTimings.INDEX_WARM, indexWarmAt);
+            }
+            if (networkWarmAt > 0) {
+                timings.put(BootTimings.NETWORK_WARM, networkWarmAt);
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "Could not report warm-up timings", e);
+        }
+        return timings.toString();
+    }
+
+    @Override
+    public void heartbeat(long itemDurationMs) {
+        PlaybackWatchdog.heartbeat(itemDurationMs);
+    }
+
+    @Override
+    public void configureWatchdog(long stallWindowMs) {
+        PlaybackWatchdog.setStallWindowMs(context, stallWindowMs);
+    }
+
+    @Override
+    public String getWatchdogStatus() {
+        long lastHeartbeatAt = PlaybackWatchdog.getLastHeartbeatAt();
+        Bundle status = new Bundle();
+        status.putDouble("stallWindowMs", PlaybackWatchdog.getStallWindowMs(context));
+        status.putDouble("restartCount", PlaybackWatchdog.getRestartCount(context));
+        status.putDouble("msSinceHeartbeat",
+                lastHeartbeatAt > 0 ? SystemClock.elapsedRealtime() - lastHeartbeatAt : -1);
+        return toJson(status).toString();
+    }
+
+    // Parsed and compiled once per changed response; the scheduler decides
+    // what the UI sees and when
+    @Override
+    public void onPlaylistChanged(byte[] body) throws IOException {
+        scheduler.update(PlaylistModel.parseResponse(body));
+    }
+
+    @Override
+    public void onActivePlaylistChanged(PlaylistModel active, PlaylistModel upcoming) {
+        try {
+            JSONObject event = new JSONObject();
+            event.put("playlistId", active.id);
+            event.put("playlistName", active.name);
+            event.put("assets", toAssetArray(active.playableAssets()));
+            event.put("upcomingAssets", upcoming != null
+                    ? toAssetArray(upcoming.playableAssets())
+                    : new JSONArray());
+            String json = event.toString();
+            broadcast(callback -> callback.onActivePlaylistChanged(json));
+        } catch (JSONException e) {
+            Log.e(TAG, "Could not encode active playlist", e);
+        }
+    }
+
+    @Override
+    public void onScheduleCompiled(PlaylistSchedule schedule) {
+        prefetcher.update(schedule);
+    }
+
+    @Override
+    public void onPollFailed(String message) {
+        broadcast(callback -> callback.onPollFailed(message));
+    }
+
+    private void broadcastProgress(AssetDownloadEngine.Request request, String state,
+                                   long bytesDownloaded, long totalBytes) {
+        try {
+            JSONObject event = new JSONObject();
+            event.put("index", request.index);
+            event.put("url", request.url);
+            event.put("state", state);
+            event.put("bytesDownloaded", bytesDownloaded);
+            event.put("totalBytes", totalBytes);
+            String json = event.toString();
+            broadcast(callback -> callback.onDownloadProgress(json));
+        } catch (JSONException e) {
+            Log.w(TAG, "Could not encode progress", e);
+        }
+    }
+
+    // A dead UI process is simply skipped; its registration is dropped by
+    // RemoteCallbackList and work carries on
+    private synchronized void broadcast(Broadcast broadcast) {
+        int count = callbacks.beginBroadcast();
+        try {
+            for (int i = 0; i < count; i++) {
+                try {
+                    broadcast.send(callbacks.getBroadcastItem(i));
+                } catch (RemoteException e) {
+                    Log.w(TAG, "UI callback failed", e);
+                }
+            }
+        } finally {
+            callbacks.finishBroadcast();
+        }
+    }
+
+    private static AssetDownloadEngine.Request toRequest(int index, JSONObject asset) throws JSONException {
+        return new AssetDownloadEngine.Request(
+                index,
+                asset.getString("filepath"),
+                asset.getString("filetype"),
+                asset.optInt("duration", 0),
+                asset.isNull("name") ? null : asset.optString("name", null),
+                index < URGENT_ASSETS ? AssetDownloadEngine.PRIORITY_URGENT : AssetDownloadEngine.PRIORITY_NORMAL);
+    }
+
+    private SharedPreferences prefs() {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    private static JSONObject toLocalAsset(AssetDownloadEngine.Result result) {
+        JSONObject localAsset = new JSONObject();
+        try {
+            localAsset.put("type", result.type);
+            localAsset.put("url", result.localUrl);
+            localAsset.put("duration", result.request.durationSeconds);
+            // Lets the player recognise the cached copy of a streamed video
+            localAsset.put("source", result.request.url);
+            if (GrowingFileDataSource.isStreamUrl(result.localUrl)) {
+                localAsset.put("streaming", true);
+            }
+            if (result.request.name != null) {
+                localAsset.put("name", result.request.name);
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "Could not encode local asset", e);
+        }
+        return localAsset;
+    }
+
+    // Same shape as the Asset interface in services/Api.ts: only playable
+    // assets, already in playing order, with the duration as a number
+    private static JSONArray toAssetArray(List<PlaylistModel.Asset> assets) throws JSONException {
+        JSONArray array = new JSONArray();
+        for (PlaylistModel.Asset asset : assets) {
+            JSONObject json = new JSONObject();
+            json.put("filepath", asset.filepath);
+            json.put("filetype", asset.filetype);
+            json.put("duration", asset.durationSeconds);
+            if (asset.name != null) {
+                json.put("name", asset.name);
+            }
+            array.put(json);
+        }
+        return array;
+    }
+
+    // Opens (and if needed migrates) the SQLite index, then leaves DNS, TCP
+    // and TLS to the signage server idle in the pool the poller and
+    // downloads use, so the first poll after boot goes straight out
+    private void warmUp() {
+        try {
+            long bytes = AssetCacheIndex.getInstance(context).totalObjectBytes();
+            indexWarmAt = SystemClock.elapsedRealtime();
+            Log.d(TAG, "Cache index ready (" + bytes + " bytes cached)");
+        } catch (Exception e) {
+            Log.w(TAG, "Could not prewarm cache index", e);
+        }
+
+        Request request = new Request.Builder().url(PlaylistPoller.API_BASE_URL).head().build();
+        for (int attempt = 1; attempt <= NETWORK_WARM_ATTEMPTS && !shutDown; attempt++) {
+            try (Response ignored = SignageHttp.client().newCall(request).execute()) {
+                networkWarmAt = SystemClock.elapsedRealtime();
+                Log.d(TAG, "Network warm after " + attempt + " attempt(s)");
+                return;
+            } catch (Exception e) {
+                Log.d(TAG, "Network not ready yet (attempt " + attempt + "): " + e.getMessage());
+                SystemClock.sleep(NETWORK_WARM_RETRY_MS);
+            }
+        }
+    }
+
+    private static JSONObject toJson(Bundle bundle) {
+        JSONObject json = new JSONObject();
+        for (String key : bundle.keySet()) {
+            try {
+                json.put(key, bundle.get(key));
+            } catch (JSONException e) {
+                Log.w(TAG, "Skipping metric " + key, e);
+            }
+        }
+        return json;
+    }
+}
@@ -0,0 +1,257 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Build;
+import android.os.IBinder;
+import android.os.RemoteException;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// UI-process side of ISignageSync. Calls made before the :sync service is
+// connected are queued, and polling state is replayed if it restarts.
+public class SignageSyncClient {
+    private static final String TAG = "SignageSyncClient";
+
+    public interface Call {
+        void run(ISignageSync sync) throws RemoteException;
+    }
+
+    public interface Listener {
+        default void onDownloadProgress(String eventJson) {
+        }
+
+        default void onActivePlaylistChanged(String eventJson) {
+        }
+
+        default void onPollFailed(String message) {
+        }
+    }
+
+    public interface DownloadCallback {
+        // Each asset of the request as soon as it is cached, before onComplete
+        default void onAssetReady(int index, String localAssetJson) {
+        }
+
+        // null when the service failed or went away mid-request
+        void onComplete(String localAssetsJson);
+    }
+
+    private static SignageSyncClient instance;
+
+    private final Context context;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final List<Call> pending = new ArrayList<>();
+    private final Map<Integer, DownloadCallback> downloads = new HashMap<>();
+    private ISignageSync sync;
+    private boolean bound;
+    private int nextRequestId;
+
+    // Re-sent after the service process restarts
+    private Call pollingCall;
+    private Call scheduledCall;
+
+    private final ISignageSyncCallback callback = new ISignageSyncCallback.Stub() {
+        @Override
+        public void onDownloadProgress(String eventJson) {
+            for (Listener listener : listeners) {
+                listener.onDownloadProgress(eventJson);
+            }
+        }
+
+        @Override
+        public void onAssetReady(int requestId, int index, String localAssetJson) {
+            DownloadCallback download;
+            synchronized (SignageSyncClient.this) {
+                download = downloads.get(requestId);
+            }
+            if (download != null) {
+                download.onAssetReady(index, localAssetJson);
+            }
+        }
+
+        @Override
+        public void onDownloadComplete(int requestId, String localAssetsJson) {
+            DownloadCallback download;
+            synchronized (SignageSyncClient.this) {
+                download = downloads.remove(requestId);
+            }
+            if (download != null) {
+                download.onComplete(localAssetsJson);
+            }
+        }
+
+        @Override
+        public void onActivePlaylistChanged(String eventJson) {
+            for (Listener listener : listeners) {
+                listener.onActivePlaylistChanged(eventJson);
+            }
+        }
+
+        @Override
+        public void onPollFailed(String message) {
+            for (Listener listener : listeners) {
+                listener.onPollFailed(message);
+            }
+        }
+    };
+
+    private final ServiceConnection connection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            List<Call> replay = new ArrayList<>();
+            ISignageSync connected = ISignageSync.Stub.asInterface(service);
+            synchronized (SignageSyncClient.this) {
+                sync = connected;
+                replay.add(s -> s.registerCallback(callback));
+                if (pollingCall != null) {
+                    replay.add(pollingCall);
+                }
+                if (scheduledCall != null) {
+                    replay.add(scheduledCall);
+                }
+                replay.addAll(pending);
+                pending.clear();
+            }
+            Log.d(TAG, "Connected to sync service");
+            for (Call call : replay) {
+                invoke(connected, call);
+            }
+        }
+
+        // The :sync process died; the binding stays and reconnects when the
+        // service is restarted
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            List<DownloadCallback> failed;
+            synchronized (SignageSyncClient.this) {
+                sync = null;
+                failed = new ArrayList<>(downloads.values());
+                downloads.clear();
+            }
+            Log.w(TAG, "Sync service disconnected");
+            for (DownloadCallback download : failed) {
+                download.onComplete(null);
+            }
+        }
+    };
+
+    private SignageSyncClient(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static synchronized SignageSyncClient getInstance(Context context) {
+        if (instance == null) {
+            instance = new SignageSyncClient(context);
+        }
+        return instance;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public void call(Call call) {
+        ISignageSync connected;
+        synchronized (this) {
+            connected = sync;
+            if (connected == null) {
+                pending.add(call);
+                ensureBound();
+                return;
+            }
+        }
+        invoke(connected, call);
+    }
+
+    public void startPolling(String deviceName, long intervalMs, long retryDelayMs) {
+        Call call = s -> s.startPolling(deviceName, intervalMs, retryDelayMs);
+        synchronized (this) {
+            pollingCall = call;
+        }
+        call(call);
+    }
+
+    public void stopPolling() {
+        synchronized (this) {
+            pollingCall = null;
+        }
+        call(ISignageSync::stopPolling);
+    }
+
+    public void setScheduledAssets(List<String> urls) {
+        Call call = s -> s.setScheduledAssets(urls);
+        synchronized (this) {
+            scheduledCall = call;
+        }
+        call(call);
+    }
+
+    public void downloadAssets(String assetsJson, boolean revalidate, DownloadCallback download) {
+        int requestId;
+        synchronized (this) {
+            requestId = ++nextRequestId;
+            downloads.put(requestId, download);
+        }
+        call(s -> s.downloadAssets(requestId, assetsJson, revalidate));
+    }
+
+    // Synchronous, for GrowingFileDataSource on a player loader thread;
+    // FRONTIER_UNKNOWN while the service is not connected
+    public long getDownloadFrontier(File part) {
+        ISignageSync connected;
+        synchronized (this) {
+            connected = sync;
+        }
+        if (connected == null) {
+            return GrowingFileDataSource.FRONTIER_UNKNOWN;
+        }
+        try {
+            return connected.getDownloadFrontier(part.getAbsolutePath());
+        } catch (RemoteException e) {
+            return GrowingFileDataSource.FRONTIER_UNKNOWN;
+        }
+    }
+
+    private void invoke(ISignageSync connected, Call call) {
+        try {
+            call.run(connected);
+        } catch (RemoteException e) {
+            Log.w(TAG, "Sync service call failed", e);
+        }
+    }
+
+    // Started as well as bound, so the service keeps running (and
+    // downloading) in the foreground even if this process dies
+    private void ensureBound() {
+        if (bound) {
+            return;
+        }
+        Intent intent = new Intent(context, AutoStartService.class);
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                context.startForegroundService(intent);
+            } else {
+                context.startService(intent);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Could not start sync service", e);
+        }
+        bound = context.bindService(intent, connection, Context.BIND_AUTO_CREATE);
+        if (!bound) {
+            Log.e(TAG, "Could not bind to sync service");
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.ghutch55.DigitalSignagev3;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.ImageDecoder;
+import android.graphics.Point;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.util.Log;
+import android.view.WindowManager;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+
+// Decodes slides no larger than the panel (a 6000px upload becomes a
+// 1920px-wide frame) into bitmaps recycled through a BitmapPool, and keeps
+// the slides the player asks for decoded ahead of time. Animated GIF/WebP
+// are decoded as AnimatedImageDrawables instead (API 28+), never pooled.
+// Not thread-safe; owned by the player's decode thread.
+public class SlideImageLoader {
+    private static final String TAG = "SlideImageLoader";
+    private static final int BYTES_PER_PIXEL = 4;
+    // Spare full-screen frames kept for reuse beyond the retained slides
+    private static final int POOLED_FRAMES = 2;
+
+    private final int targetWidth;
+    private final int targetHeight;
+    private final BitmapPool pool;
+    private final Map<String, Bitmap> decoded = new HashMap<>();
+
+    public SlideImageLoader(Context context) {
+        Point size = new Point();
+        WindowManager windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        windowManager.getDefaultDisplay().getRealSize(size);
+        targetWidth = Math.max(size.x, 1);
+        targetHeight = Math.max(size.y, 1);
+        pool = new BitmapPool((long) targetWidth * targetHeight * BYTES_PER_PIXEL * POOLED_FRAMES);
+    }
+
+    // The decoded slide for `path`, from memory when it was preloaded
+    public Bitmap load(String path) {
+        Bitmap bitmap = decoded.get(path);
+        if (bitmap == null) {
+            bitmap = decode(path);
+            if (bitmap != null) {
+                decoded.put(path, bitmap);
+            }
+        }
+        return bitmap;
+    }
+
+    // Keeps `paths` (on screen and upcoming) decoded and returns every other
+    // slide to the pool. Callers must have detached those from their views.
+    public void retain(Collection<String> paths) {
+        Iterator<Map.Entry<String, Bitmap>> iterator = decoded.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Bitmap> entry = iterator.next();
+            if (!paths.contains(entry.getKey())) {
+                pool.put(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    // Animated slides from API 28 on; earlier releases only get the first
+    // frame through load(), so JS keeps those playlists in the WebView
+    public boolean playsAnimated(String path) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.P && isAnimated(path);
+    }
+
+    // Fit within the panel like load(); the caller starts the animation
+    public Drawable loadAnimated(String path) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P) {
+            return null;
+        }
+        try {
+            return ImageDecoder.decodeDrawable(ImageDecoder.createSource(new File(path)),
+                    (decoder, info, source) -> {
+                        int sourceWidth = info.getSize().getWidth();
+                        int sourceHeight = info.getSize().getHeight();
+                        float scale = Math.min(1f, Math.min((float) targetWidth / sourceWidth,
+                                (float) targetHeight / sourceHeight));
+                        decoder.setTargetSize(Math.max(Math.round(sourceWidth * scale), 1),
+                                Math.max(Math.round(sourceHeight * scale), 1));
+                    });
+        } catch (IOException | OutOfMemoryError e) {
+            Log.e(TAG, "Could not decode animated " + path, e);
+            return null;
+        }
+    }
+
+    // GIFs are taken as animated; WebP says so in its VP8X header
+    private static boolean isAnimated(String path) {
+        String lower = path.toLowerCase(Locale.US);
+        if (lower.endsWith(".gif")) {
+            return true;
+        }
+        if (!lower.endsWith(".webp")) {
+            return false;
+        }
+        byte[] header = new byte[21];
+        try (InputStream in = new FileInputStream(path)) {
+            int read = 0;
+            int n;
+            while (read < header.length && (n = in.read(header, read, header.length - read)) != -1) {
+                read += n;
+            }
+            return read == header.length
+                    && "VP8X".equals(new String(header, 12, 4, StandardCharsets.US_ASCII))
+                    && (header[20] & 0x02) != 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public void clear() {
+        decoded.clear();
+        pool.clear();
+    }
+
+    private Bitmap decode(String path) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return null;
+        }
+
+        // Fit-center never shows more pixels than the panel has
+        float scale = Math.min(1f, Math.min((float) targetWidth / bounds.outWidth,
+                (float) targetHeight / bounds.outHeight));
+        int width = Math.max(Math.round(bounds.outWidth * scale), 1);
+        int height = Math.max(Math.round(bounds.outHeight * scale), 1);
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inMutable = true;
+        // Power-of-two subsampling happens inside the decoder, then density
+        // scaling trims the rest so the result is exactly width x height
+        options.inSampleSize = sampleSize(bounds.outWidth, width);
+        if (bounds.outWidth / options.inSampleSize != width) {
+            options.inScaled = true;
+            options.inDensity = bounds.outWidth;
+            options.inTargetDensity = width * options.inSampleSize;
+        }
+        options.inBitmap = pool.get(width * height * BYTES_PER_PIXEL);
+
+        try {
+            return BitmapFactory.decodeFile(path, options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap did not fit this image after all
+            Log.w(TAG, "Could not reuse pooled bitmap for " + path, e);
+            pool.put(options.inBitmap);
+            options.inBitmap = null;
+            return BitmapFactory.decodeFile(path, options);
+        } catch (OutOfMemoryError e) {
+            Log.e(TAG, "Out of memory decoding " + path, e);
+            pool.clear();
+            return null;
+        }
+    }
+
+    private static int sampleSize(int sourceWidth, int targetWidth) {
+        int sampleSize = 1;
+        while (sourceWidth / (sampleSize * 2) >= targetWidth) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+}
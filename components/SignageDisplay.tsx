@@ -1,62 +1,54 @@
 import { useKeepAwake } from "expo-keep-awake";
-import React, { useCallback, useEffect, useRef, useState } from "react";
+import React, {
+  useCallback,
+  useEffect,
+  useMemo,
+  useRef,
+  useState,
+} from "react";
 import { ActivityIndicator, StyleSheet, Text, View } from "react-native";
 import { WebView } from "react-native-webview";
-import { Asset, fetchPlaylist } from "../services/Api";
 import {
-  clearCache,
+  Asset,
+  PlaylistSelection,
+  startPlaylistPolling,
+} from "../services/Api";
+import {
   createHTMLWithData,
   downloadAssets,
   getCachedAssets,
+  LocalAsset,
+  markAssetPlayed,
+  reconcileAssets,
+  setScheduledAssets,
 } from "../services/AssetDownloader";
-import { getDeviceName } from "../services/DeviceName";
+import {
+  ConnectivityState,
+  getConnectivity,
+  subscribeToConnectivity,
+} from "../services/Connectivity";
+import {
+  getBootTimings,
+  getDeviceName,
+  getDeviceSnapshot,
+} from "../services/DeviceName";
+import { sendHeartbeat } from "../services/PlaybackWatchdog";
+import SignagePlayer, {
+  canPlayNatively,
+  dismissInstantOn,
+  getAssetServerUrl,
+  serveFromAssetServer,
+} from "./SignagePlayer";
+
+// Ready assets arriving together (cache hits, parallel downloads) are
+// applied as one update
+const READY_BATCH_MS = 500;
 
 interface SignageDisplayProps {
   refreshInterval?: number; // minutes
   retryDelay?: number; // seconds
 }
 
-const checkInternetConnection = async (retries = 3): Promise<boolean> => {
-  for (let i = 0; i < retries; i++) {
-    try {
-      const controller = new AbortController();
-      const timeoutId = setTimeout(() => controller.abort(), 5000); // 5s timeout
-
-      const response = await fetch("https://www.applicationbank.com", {
-        method: "HEAD",
-        signal: controller.signal,
-        headers: {
-          "User-Agent": "SignageApp/2.0 (Android TV Box)",
-        },
-      });
-
-      clearTimeout(timeoutId);
-
-      // Check if we got a reasonable response (200-399 range)
-      if (response.status >= 200 && response.status < 400) {
-        return true;
-      }
-
-      console.log(`Connectivity check failed with status: ${response.status}`);
-    } catch (error) {
-      console.log(
-        `Connectivity check attempt ${i + 1}/${retries} failed:`,
-        error
-      );
-
-      if (i === retries - 1) {
-        console.log("No internet connection after retries");
-        return false;
-      }
-
-      // Wait between retries with exponential backoff
-      const delay = Math.min(1000 * Math.pow(2, i), 5000);
-      await new Promise((resolve) => setTimeout(resolve, delay));
-    }
-  }
-  return false;
-};
-
 // Helper function to compare asset arrays
 const assetsAreEqual = (assets1: Asset[], assets2: Asset[]): boolean => {
   if (assets1.length !== assets2.length) {
@@ -68,8 +60,7 @@ const assetsAreEqual = (assets1: Asset[], assets2: Asset[]): boolean => {
     return (
       asset1.filepath === asset2.filepath &&
       asset1.filetype === asset2.filetype &&
-      asset1.time === asset2.time &&
-      asset1.playing_order === asset2.playing_order &&
+      asset1.duration === asset2.duration &&
       asset1.name === asset2.name
     );
   });
@@ -82,104 +73,179 @@ const SignageDisplay: React.FC<SignageDisplayProps> = ({
   // Keep screen awake at component level
   useKeepAwake();
 
-  const [htmlContent, setHtmlContent] = useState<string>("");
+  const [displayAssets, setDisplayAssets] = useState<LocalAsset[]>([]);
   const [isLoading, setIsLoading] = useState(true);
   const [error, setError] = useState<string>("");
   const [lastUpdate, setLastUpdate] = useState<Date | null>(null);
   const [deviceName, setDeviceName] = useState<string>("");
   const [isOffline, setIsOffline] = useState<boolean>(false);
+  const [pollingDevice, setPollingDevice] = useState<string>("");
 
   // Store the last fetched assets for comparison
   const lastFetchedAssets = useRef<Asset[]>([]);
-  const refreshIntervalRef = useRef<NodeJS.Timeout | null>(null);
+  const hasReceivedPlaylist = useRef(false);
+  const hasContent = useRef(false);
+  // Bumped per applied playlist so late ready events of an older one are dropped
+  const playlistGeneration = useRef(0);
+  const instantOnDismissed = useRef(false);
   const webViewRef = useRef<WebView>(null);
+  // Latest default-network state pushed by the native connectivity module
+  const connectivity = useRef<ConnectivityState | null>(null);
+  // Showing cached content until the network comes back
+  const waitingForNetwork = useRef(false);
+
+  // Image/video playlists play natively; the HTML page is only built when a
+  // playlist contains web content
+  const playNatively = useMemo(
+    () => canPlayNatively(displayAssets),
+    [displayAssets]
+  );
+  const hasDisplay = displayAssets.length > 0;
 
-  const loadContent = useCallback(
-    async (forceDownload: boolean = false) => {
-      try {
-        console.log("Starting content load...");
-        setIsLoading(true);
-        setError("");
+  // The WebView loads cached files over loopback HTTP rather than file://
+  const [assetServerUrl, setAssetServerUrl] = useState<string>("");
+  useEffect(() => {
+    getAssetServerUrl()
+      .then(setAssetServerUrl)
+      .catch((serverError) =>
+        console.error("Asset server unavailable, using file URLs:", serverError)
+      );
+  }, []);
+  const webAssets = useMemo(
+    () =>
+      assetServerUrl
+        ? serveFromAssetServer(displayAssets, assetServerUrl)
+        : displayAssets,
+    [displayAssets, assetServerUrl]
+  );
 
-        // Get device name
-        console.log("Getting device name...");
-        const device = await getDeviceName();
-        setDeviceName(device);
-        console.log(`Device name: ${device}`);
+  // The page is built once, when playback moves to the WebView; later lists
+  // are posted into the running rotation instead of reloading the document
+  const showWebView = hasDisplay && !playNatively;
+  const [webDocumentAssets, setWebDocumentAssets] = useState<
+    LocalAsset[] | null
+  >(null);
+  if (showWebView && webDocumentAssets === null) {
+    setWebDocumentAssets(webAssets);
+  } else if (!showWebView && webDocumentAssets !== null) {
+    setWebDocumentAssets(null);
+  }
+  const htmlContent = useMemo(
+    () => (webDocumentAssets ? createHTMLWithData(webDocumentAssets) : ""),
+    [webDocumentAssets]
+  );
 
-        // Check internet connection first
-        console.log("Checking internet connection...");
-        const hasInternet = await checkInternetConnection();
-        setIsOffline(!hasInternet);
-        console.log(
-          `Internet connection: ${hasInternet ? "Available" : "Not available"}`
-        );
+  // The page switches over at its next item boundary; it ignores a list it
+  // already has, so this is also safe to repeat once the page has loaded
+  const postContentList = useCallback(() => {
+    webViewRef.current?.postMessage(
+      JSON.stringify({ type: "contentList", assets: webAssets })
+    );
+  }, [webAssets]);
 
-        if (!hasInternet) {
-          console.log(
-            "No internet connection - attempting to use cached content"
-          );
+  useEffect(() => {
+    if (htmlContent !== "") {
+      postContentList();
+    }
+  }, [htmlContent, postContentList]);
 
-          // Try to load cached content
-          const cachedAssets = await getCachedAssets();
+  // Every rendered asset feeds cache eviction and the playback watchdog
+  const handleAssetStarted = useCallback(
+    ({ url, duration }: { url: string; duration?: number }) => {
+      markAssetPlayed(url);
+      sendHeartbeat(duration ?? 0);
+    },
+    []
+  );
 
-          if (cachedAssets.length > 0) {
-            console.log(
-              `Using ${cachedAssets.length} cached assets (offline mode)`
-            );
-            const html = createHTMLWithData(cachedAssets);
-            setHtmlContent(html);
-            setLastUpdate(new Date());
-            setIsLoading(false);
-
-            // Schedule retry when back online
-            setTimeout(() => {
-              console.log("Retrying connection after offline mode...");
-              loadContent();
-            }, retryDelay * 1000);
-            return;
-          } else {
-            throw new Error(
-              "No internet connection and no cached content available"
-            );
-          }
-        }
+  const showCachedContent = useCallback(async (): Promise<boolean> => {
+    const cachedAssets = await getCachedAssets();
 
-        // Online mode - fetch fresh content
-        setIsOffline(false);
-        console.log("Fetching playlist from API...");
+    if (cachedAssets.length === 0) {
+      return false;
+    }
 
-        // Fetch playlist from API
-        const assets = await fetchPlaylist(device);
+    console.log(`Using ${cachedAssets.length} cached assets (offline mode)`);
+    setDisplayAssets(cachedAssets);
+    hasContent.current = true;
+    setLastUpdate(new Date());
+    return true;
+  }, []);
 
+  // Downloads/renders the active playlist, but only when its assets differ
+  // from what is on screen
+  const applyPlaylist = useCallback(
+    async (
+      { assets, upcomingAssets }: PlaylistSelection,
+      device: string,
+      forceDownload = false
+    ) => {
+      try {
         if (assets.length === 0) {
           throw new Error("No valid assets found in playlist");
         }
 
-        console.log(`Found ${assets.length} assets from API`);
+        // Keep the next scheduled playlist safe from cache eviction
+        setScheduledAssets(upcomingAssets);
 
         // Compare with previously fetched assets
         const contentChanged =
           forceDownload || !assetsAreEqual(assets, lastFetchedAssets.current);
 
         if (!contentChanged) {
-          console.log("Content unchanged - skipping download");
           setLastUpdate(new Date());
-          setIsLoading(false);
           return;
         }
 
-        console.log("Content has changed - proceeding with download");
+        console.log(
+          `Content has changed (${assets.length} assets) - proceeding with download`
+        );
 
         // Store the new assets for future comparison
         lastFetchedAssets.current = [...assets];
-
-        // Clear old cache and download new assets (only when content changes)
-        console.log("Clearing cache...");
-        await clearCache();
-
-        console.log("Downloading assets...");
-        const localAssets = await downloadAssets(assets, device);
+        const generation = ++playlistGeneration.current;
+
+        // Assets start playing as they land (in playing order, which is
+        // also download priority) instead of after the whole list
+        const ready: LocalAsset[] = [];
+        let readyTimer: ReturnType<typeof setTimeout> | undefined;
+        const onAssetReady = (index: number, asset: LocalAsset) => {
+          ready[index] = asset;
+          if (readyTimer) {
+            return;
+          }
+          readyTimer = setTimeout(() => {
+            readyTimer = undefined;
+            if (generation !== playlistGeneration.current) {
+              return;
+            }
+            // Streamed videos need the native player; a page with web
+            // content waits for their cached copies instead
+            let playable = ready.filter(Boolean);
+            if (!canPlayNatively(playable)) {
+              playable = playable.filter((asset) => !asset.streaming);
+            }
+            if (playable.length === 0) {
+              return;
+            }
+            console.log(
+              `${playable.length} of ${assets.length} assets ready, updating rotation`
+            );
+            setDisplayAssets(playable);
+            hasContent.current = true;
+          }, READY_BATCH_MS);
+        };
+
+        // The current content keeps playing from the cache while only new or
+        // changed files are fetched; a forced load revalidates everything
+        console.log("Reconciling assets with cache...");
+        const localAssets = forceDownload
+          ? await downloadAssets(assets, device, onAssetReady)
+          : await reconcileAssets(assets, device, onAssetReady);
+        clearTimeout(readyTimer);
+        if (generation !== playlistGeneration.current) {
+          return;
+        }
 
         if (localAssets.length === 0) {
           throw new Error("Failed to download any assets");
@@ -187,59 +253,190 @@ const SignageDisplay: React.FC<SignageDisplayProps> = ({
 
         console.log(`Successfully downloaded ${localAssets.length} assets`);
 
-        // Generate HTML for display
-        console.log("Generating HTML content...");
-        const html = createHTMLWithData(localAssets);
-        setHtmlContent(html);
+        setDisplayAssets(localAssets);
+        hasContent.current = true;
         setLastUpdate(new Date());
+        setError("");
         console.log("Content loaded successfully!");
       } catch (err) {
         const errorMessage =
           err instanceof Error ? err.message : "Unknown error occurred";
         console.error("Failed to load content:", errorMessage);
         setError(errorMessage);
-
-        // Schedule retry
-        setTimeout(() => {
-          console.log(`Retrying after error in ${retryDelay} seconds...`);
-          loadContent();
-        }, retryDelay * 1000);
       } finally {
         setIsLoading(false);
       }
     },
-    [retryDelay]
+    []
+  );
+
+  const loadContent = useCallback(async () => {
+    try {
+      console.log("Starting content load...");
+      setIsLoading(true);
+      setError("");
+
+      // Get device name
+      console.log("Getting device name...");
+      const device = await getDeviceName();
+      setDeviceName(device);
+      console.log(`Device name: ${device}`);
+
+      getDeviceSnapshot()
+        .then(({ build, display, videoDecoders }) => {
+          console.log(
+            `${build.manufacturer} ${build.model}: ${display.width}x${
+              display.height
+            } @ ${display.refreshRate} Hz, decoders: ${videoDecoders
+              .map((decoder) => decoder.mimeType)
+              .join(", ")}`
+          );
+        })
+        .catch((snapshotError) =>
+          console.error("Error reading device snapshot:", snapshotError)
+        );
+
+      getBootTimings().then(([lastBoot]) => {
+        if (lastBoot?.firstFrameMs) {
+          console.log(
+            `Last boot on ${device}: launched at ${lastBoot.launchedMs} ms, first frame at ${lastBoot.firstFrameMs} ms`
+          );
+        }
+      });
+
+      // Connectivity is tracked natively; nothing is probed here
+      if (!connectivity.current) {
+        const initial = await getConnectivity();
+        connectivity.current = connectivity.current ?? initial;
+      }
+      const hasInternet = connectivity.current.connected;
+      setIsOffline(!hasInternet);
+      console.log(
+        `Internet connection: ${hasInternet ? "Available" : "Not available"}`
+      );
+
+      if (!hasInternet) {
+        console.log(
+          "No internet connection - attempting to use cached content"
+        );
+
+        if (await showCachedContent()) {
+          setIsLoading(false);
+
+          // Reloaded by the connectivity listener once the network is back,
+          // or right away if it came back while the cache was being read
+          waitingForNetwork.current = true;
+          if (connectivity.current?.connected) {
+            waitingForNetwork.current = false;
+            loadContent();
+          }
+          return;
+        } else {
+          throw new Error(
+            "No internet connection and no cached content available"
+          );
+        }
+      }
+
+      // Online mode - the native poller fetches the playlist from here on
+      setIsOffline(false);
+      console.log("Starting playlist polling...");
+      setPollingDevice(device);
+    } catch (err) {
+      const errorMessage =
+        err instanceof Error ? err.message : "Unknown error occurred";
+      console.error("Failed to load content:", errorMessage);
+      setError(errorMessage);
+      setIsLoading(false);
+
+      // Schedule retry
+      setTimeout(() => {
+        console.log(`Retrying after error in ${retryDelay} seconds...`);
+        loadContent();
+      }, retryDelay * 1000);
+    }
+  }, [retryDelay, showCachedContent]);
+
+  // Registered before the initial load so no change can slip in between
+  useEffect(
+    () =>
+      subscribeToConnectivity((state) => {
+        connectivity.current = state;
+        // Regaining the network proves nothing yet; the next poll clears it
+        if (!state.connected) {
+          setIsOffline(true);
+        }
+        if (state.connected && waitingForNetwork.current) {
+          waitingForNetwork.current = false;
+          console.log(`Network back on ${state.transport}, reloading...`);
+          loadContent();
+        }
+      }),
+    [loadContent]
   );
 
   // Initial load
   useEffect(() => {
     console.log("Component mounted, starting initial load...");
-    loadContent(true); // Force download on initial load
+    loadContent();
   }, [loadContent]);
 
-  // Set up refresh interval
+  // Native polling: conditional requests, events only when the playlist changed
   useEffect(() => {
-    // Clear any existing interval
-    if (refreshIntervalRef.current) {
-      clearInterval(refreshIntervalRef.current);
+    if (!pollingDevice) {
+      return;
     }
 
-    if (refreshInterval > 0) {
-      console.log(`Setting up refresh interval: ${refreshInterval} minutes`);
-      refreshIntervalRef.current = setInterval(() => {
-        console.log("Refreshing content...");
-        loadContent(); // Don't force download on refresh - let comparison decide
-      }, refreshInterval * 60 * 1000);
-    }
+    console.log(`Setting up playlist polling: ${refreshInterval} minutes`);
+    const stopPolling = startPlaylistPolling(
+      pollingDevice,
+      refreshInterval,
+      retryDelay,
+      (selection) => {
+        setIsOffline(false);
+        // Force download on the first response
+        const forceDownload = !hasReceivedPlaylist.current;
+        hasReceivedPlaylist.current = true;
+        applyPlaylist(selection, pollingDevice, forceDownload);
+      },
+      async (pollError) => {
+        setError(pollError.message);
+        // The poller retries by itself; meanwhile play whatever is cached
+        if (!hasContent.current) {
+          setIsOffline(!(await showCachedContent()));
+          setIsLoading(false);
+        }
+      }
+    );
 
     return () => {
-      if (refreshIntervalRef.current) {
-        console.log("Clearing refresh interval");
-        clearInterval(refreshIntervalRef.current);
-        refreshIntervalRef.current = null;
-      }
+      console.log("Stopping playlist polling");
+      stopPolling();
     };
-  }, [refreshInterval, loadContent]);
+  }, [
+    pollingDevice,
+    refreshInterval,
+    retryDelay,
+    applyPlaylist,
+    showCachedContent,
+  ]);
+
+  // Cached content has been looping natively since launch; it stays on top
+  // until our own player has actually rendered something
+  const takeOverFromInstantOn = useCallback(() => {
+    if (!instantOnDismissed.current) {
+      instantOnDismissed.current = true;
+      dismissInstantOn();
+    }
+  }, []);
+
+  const handleNativeAssetStarted = useCallback(
+    (event: { url: string; duration?: number }) => {
+      takeOverFromInstantOn();
+      handleAssetStarted(event);
+    },
+    [takeOverFromInstantOn, handleAssetStarted]
+  );
 
   // Garbage collection
   useEffect(() => {
@@ -258,7 +455,7 @@ const SignageDisplay: React.FC<SignageDisplayProps> = ({
   }, []);
 
   // Loading state (only when no content exists)
-  if (isLoading && !htmlContent) {
+  if (isLoading && !hasDisplay) {
     return (
       <View style={styles.centerContainer}>
         <ActivityIndicator size="large" color="#ffffff" />
@@ -277,7 +474,7 @@ const SignageDisplay: React.FC<SignageDisplayProps> = ({
   }
 
   // Error state (when no content is available at all)
-  if (error && !htmlContent) {
+  if (error && !hasDisplay) {
     return (
       <View style={styles.centerContainer}>
         <Text style={styles.errorTitle}>Unable to Load Content</Text>
@@ -300,7 +497,15 @@ const SignageDisplay: React.FC<SignageDisplayProps> = ({
   // Success state - display content
   return (
     <View style={styles.container}>
-      {htmlContent && (
+      {playNatively && (
+        <SignagePlayer
+          assets={displayAssets}
+          style={styles.player}
+          onAssetStarted={handleNativeAssetStarted}
+        />
+      )}
+
+      {htmlContent !== "" && (
         <WebView
           ref={webViewRef}
           source={{ html: htmlContent }}
@@ -314,7 +519,8 @@ const SignageDisplay: React.FC<SignageDisplayProps> = ({
           allowFileAccess={true}
           allowFileAccessFromFileURLs={true}
           allowUniversalAccessFromFileURLs={true}
-          cacheEnabled={false}
+          // Served objects are immutable; remote pages follow their own headers
+          cacheEnabled={true}
           incognito={false}
           thirdPartyCookiesEnabled={true}
           scalesPageToFit={true}
@@ -343,8 +549,20 @@ const SignageDisplay: React.FC<SignageDisplayProps> = ({
           }}
           onLoadEnd={() => {
             console.log("WebView finished loading");
+            takeOverFromInstantOn();
+            // Catches lists that changed while the document was loading
+            postContentList();
           }}
           onMessage={(event) => {
+            try {
+              const message = JSON.parse(event.nativeEvent.data);
+              if (message.type === "played") {
+                handleAssetStarted(message);
+                return;
+              }
+            } catch {
+              // Not one of ours - fall through to logging
+            }
             console.log("WebView message:", event.nativeEvent.data);
           }}
           renderError={(errorName) => {
@@ -391,6 +609,9 @@ const styles = StyleSheet.create({
     flex: 1,
     backgroundColor: "#000000",
   },
+  player: {
+    flex: 1,
+  },
   loadingText: {
     color: "#ffffff",
     fontSize: 18,
@@ -0,0 +1,129 @@
+import React, { useEffect } from "react";
+import {
+  DeviceEventEmitter,
+  NativeModules,
+  Platform,
+  requireNativeComponent,
+  StyleProp,
+  ViewStyle,
+} from "react-native";
+import { LocalAsset } from "../services/AssetDownloader";
+
+interface NativePlayerProps {
+  assets: LocalAsset[];
+  style?: StyleProp<ViewStyle>;
+}
+
+interface PlayerEvent {
+  index: number;
+  url: string;
+  type: LocalAsset["type"];
+  // Seconds on screen
+  duration: number;
+  message?: string;
+}
+
+interface SignagePlayerProps extends NativePlayerProps {
+  onAssetStarted?: (event: PlayerEvent) => void;
+}
+
+export interface PlaybackMetrics {
+  transitions: number;
+  lateTransitions: number;
+  averageLatencyMs: number;
+  maxLatencyMs: number;
+  lastLatencyMs: number;
+  failures: number;
+}
+
+export interface AssetServerMetrics {
+  requests: number;
+  errors: number;
+  bytesSent: number;
+  averageLatencyMs: number;
+  maxLatencyMs: number;
+  recent: {
+    path: string;
+    status: number;
+    bytes: number;
+    latencyMs: number;
+  }[];
+}
+
+const { SignagePlayerModule } = NativeModules;
+
+const NativeSignagePlayer =
+  requireNativeComponent<NativePlayerProps>("SignagePlayerView");
+
+// Native GIF/WebP animation needs AnimatedImageDrawable (Android 9); before
+// that the native player would only show their first frame
+const animatesNatively = (asset: LocalAsset): boolean =>
+  Platform.OS !== "android" ||
+  Number(Platform.Version) >= 28 ||
+  !/\.(gif|webp)$/i.test(asset.url);
+
+// The native player handles images and video; web content still needs the WebView
+export const canPlayNatively = (assets: LocalAsset[]): boolean =>
+  assets.length > 0 &&
+  assets.every(
+    (asset) =>
+      (asset.type === "image" && animatesNatively(asset)) ||
+      asset.type === "video"
+  );
+
+// How late each slide swap landed after its scheduled boundary
+export const getPlaybackMetrics = (): Promise<PlaybackMetrics> =>
+  SignagePlayerModule.getPlaybackMetrics();
+
+// Loopback server for cached objects, used by the WebView player
+export const getAssetServerUrl = (): Promise<string> =>
+  SignagePlayerModule.getAssetServerUrl();
+
+export const getAssetServerMetrics = (): Promise<AssetServerMetrics> =>
+  SignagePlayerModule.getAssetServerMetrics();
+
+// Points cached files at the asset server, which serves them with Range and
+// cache headers; web assets and anything outside the object store are kept
+export const serveFromAssetServer = (
+  assets: LocalAsset[],
+  baseUrl: string
+): LocalAsset[] =>
+  assets.map((asset) => {
+    const match = /\/signage_cache\/objects\/([0-9a-f]{64}\.\w+)$/.exec(
+      asset.url
+    );
+    return match ? { ...asset, url: baseUrl + match[1] } : asset;
+  });
+
+// Hands the screen over from the native cold-start player to the React UI
+export const dismissInstantOn = (): void => {
+  SignagePlayerModule.dismissInstantOn();
+};
+
+const SignagePlayer: React.FC<SignagePlayerProps> = ({
+  assets,
+  style,
+  onAssetStarted,
+}) => {
+  useEffect(() => {
+    const started = DeviceEventEmitter.addListener(
+      "SignagePlayerAssetStarted",
+      (event: PlayerEvent) => onAssetStarted?.(event)
+    );
+    const failed = DeviceEventEmitter.addListener(
+      "SignagePlayerAssetFailed",
+      (event: PlayerEvent) => {
+        console.error(`Player error: ${event.message} (${event.url})`);
+      }
+    );
+
+    return () => {
+      started.remove();
+      failed.remove();
+    };
+  }, [onAssetStarted]);
+
+  return <NativeSignagePlayer assets={assets} style={style} />;
+};
+
+export default SignagePlayer;
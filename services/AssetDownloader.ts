@@ -1,4 +1,5 @@
 import * as FileSystem from "expo-file-system";
+import { NativeEventEmitter, NativeModules } from "react-native";
 import { Asset } from "./Api";
 
 const CACHE_DIR = `${FileSystem.documentDirectory}signage_cache/`;
@@ -9,6 +10,10 @@ export interface LocalAsset {
   url: string;
   duration: number;
   name?: string;
+  // Remote URL the asset was fetched from
+  source?: string;
+  // A video still downloading, playable only by the native player
+  streaming?: boolean;
 }
 
 interface CacheManifest {
@@ -100,26 +105,66 @@ export const getCachedAssets = async (): Promise<LocalAsset[]> => {
   }
 };
 
-export const downloadAssets = async (
-  assets: Asset[],
-  deviceName?: string
-): Promise<LocalAsset[]> => {
-  const dirInfo = await FileSystem.getInfoAsync(CACHE_DIR);
-  if (!dirInfo.exists) {
-    await FileSystem.makeDirectoryAsync(CACHE_DIR, { intermediates: true });
-  }
+interface DownloadProgressEvent {
+  index: number;
+  url: string;
+  state: "queued" | "downloading" | "cached" | "completed" | "failed";
+  bytesDownloaded: number;
+  totalBytes: number;
+}
+
+interface AssetReadyEvent {
+  batchId: string;
+  index: number;
+  asset: LocalAsset;
+}
 
-  const localAssets: LocalAsset[] = [];
+// Called with each asset's position in the playlist as soon as it is cached
+export type AssetReadyHandler = (index: number, asset: LocalAsset) => void;
 
-  for (const asset of assets) {
-    try {
-      console.log(`Downloading: ${asset.name || asset.filepath}`);
+const { AssetDownloadModule } = NativeModules;
+const downloadEvents = new NativeEventEmitter(AssetDownloadModule);
+let nextBatchId = 0;
 
-      const localAsset = await downloadSingleAsset(asset);
-      localAssets.push(localAsset);
-    } catch (error) {
-      console.error(`Failed to download ${asset.filepath}:`, error);
+const runNativeDownload = async (
+  method: "downloadAssets" | "reconcileAssets",
+  assets: Asset[],
+  deviceName?: string,
+  onAssetReady?: AssetReadyHandler
+): Promise<LocalAsset[]> => {
+  const batchId = `${Date.now()}-${++nextBatchId}`;
+  const readySubscription = downloadEvents.addListener(
+    "AssetReady",
+    (event: AssetReadyEvent) => {
+      if (event.batchId === batchId && onAssetReady) {
+        onAssetReady(event.index, event.asset);
+      }
     }
+  );
+
+  // Progress is reported per asset while the native worker pool downloads
+  // several files in parallel
+  const progressSubscription = downloadEvents.addListener(
+    "AssetDownloadProgress",
+    (event: DownloadProgressEvent) => {
+      if (event.state === "downloading") {
+        return;
+      }
+      console.log(
+        `Download ${event.state}: ${assets[event.index]?.name || event.url}`
+      );
+    }
+  );
+
+  let localAssets: LocalAsset[] = [];
+
+  try {
+    localAssets = await AssetDownloadModule[method](batchId, assets);
+  } catch (error) {
+    console.error("Failed to download assets:", error);
+  } finally {
+    progressSubscription.remove();
+    readySubscription.remove();
   }
 
   // Save manifest for offline access
@@ -130,59 +175,75 @@ export const downloadAssets = async (
   return localAssets;
 };
 
-const downloadSingleAsset = async (asset: Asset): Promise<LocalAsset> => {
-  const { filepath, filetype, time, name } = asset;
-
-  if (["jpg", "jpeg", "png", "gif", "webp"].includes(filetype.toLowerCase())) {
-    const filename = `${Date.now()}_${Math.random()
-      .toString(36)
-      .substring(2, 9)}.${filetype}`;
-    const localPath = `${CACHE_DIR}${filename}`;
-
-    const result = await FileSystem.downloadAsync(filepath, localPath);
-    if (result.status !== 200) {
-      throw new Error(`Download failed: ${result.status}`);
-    }
-
-    return {
-      type: "image",
-      url: localPath,
-      duration: parseInt(time),
-      name,
-    };
-  }
-
-  if (["mp4", "webm", "mov", "avi"].includes(filetype.toLowerCase())) {
-    const filename = `${Date.now()}_${Math.random()
-      .toString(36)
-      .substring(2, 9)}.${filetype}`;
-    const localPath = `${CACHE_DIR}${filename}`;
-
-    const result = await FileSystem.downloadAsync(filepath, localPath);
-    if (result.status !== 200) {
-      throw new Error(`Download failed: ${result.status}`);
-    }
+// Protects the next scheduled playlist from cache eviction
+export const setScheduledAssets = (assets: Asset[]): void => {
+  AssetDownloadModule.setScheduledAssets(assets.map((asset) => asset.filepath));
+};
 
-    return {
-      type: "video",
-      url: localPath,
-      duration: parseInt(time),
-      name,
-    };
-  }
+// How much of a video must be on disk before the native player starts it
+// while the rest downloads; 0 waits for every video to be fully cached
+export const configureStreaming = (startBufferBytes: number): Promise<void> =>
+  AssetDownloadModule.configureStreaming(startBufferBytes);
+
+// Playlists scheduled to start within this many minutes are downloaded
+// ahead of time (within the cache budget); 0 turns prefetching off
+export const configurePrefetch = (horizonMinutes: number): Promise<void> =>
+  AssetDownloadModule.configurePrefetch(horizonMinutes * 60 * 1000);
+
+// Caps the box's total download rate (0 for no cap) and keeps prefetching to
+// the given "HH:MM-HH:MM" windows of local time (empty for any time). The
+// first asset of a playlist always goes ahead of other downloads.
+export const configureBandwidth = (
+  maxBytesPerSecond: number,
+  offPeakWindows: string[]
+): Promise<void> =>
+  AssetDownloadModule.configureBandwidth(
+    maxBytesPerSecond,
+    offPeakWindows.join(",")
+  );
+
+export interface DownloadMetrics {
+  rateLimitBytesPerSec: number;
+  offPeakWindows: string;
+  offPeakNow: boolean;
+  urgentActive: number;
+  // Averaged over the last 10 seconds
+  throughputBytesPerSec: number;
+  urgentBytes: number;
+  normalBytes: number;
+  backgroundBytes: number;
+  queued: number;
+  active: number;
+  // Prefetches waiting for the next off-peak window
+  deferred: number;
+}
 
-  if (["url", "html", "stream"].includes(filetype.toLowerCase())) {
-    return {
-      type: "web",
-      url: filepath,
-      duration: parseInt(time),
-      name,
-    };
-  }
+export const getDownloadMetrics = (): Promise<DownloadMetrics> =>
+  AssetDownloadModule.getDownloadMetrics();
 
-  throw new Error(`Unsupported file type: ${filetype}`);
+// Feeds least-recently-played eviction; called whenever a slide is shown
+export const markAssetPlayed = (url: string): void => {
+  AssetDownloadModule.markAssetPlayed(url);
 };
 
+// Revalidates every asset against the server and fetches anything that changed
+export const downloadAssets = (
+  assets: Asset[],
+  deviceName?: string,
+  onAssetReady?: AssetReadyHandler
+): Promise<LocalAsset[]> =>
+  runNativeDownload("downloadAssets", assets, deviceName, onAssetReady);
+
+// Reports assets that are already cached straight away and fetches new ones;
+// cached files are revalidated with cheap conditional requests meanwhile, and
+// files no longer referenced are garbage-collected natively in the background
+export const reconcileAssets = (
+  assets: Asset[],
+  deviceName?: string,
+  onAssetReady?: AssetReadyHandler
+): Promise<LocalAsset[]> =>
+  runNativeDownload("reconcileAssets", assets, deviceName, onAssetReady);
+
 export const createHTMLWithData = (localAssets: LocalAsset[]): string => {
   return `<!DOCTYPE html>
 <html lang="en">
@@ -288,7 +349,9 @@ export const createHTMLWithData = (localAssets: LocalAsset[]): string => {
     <script>
         console.log('Digital signage display initialized');
         
-        const contentList = ${JSON.stringify(localAssets)};
+        let contentList = ${JSON.stringify(localAssets)};
+        // Replacement list posted by the app, applied at the next boundary
+        let pendingList = null;
         let currentIndex = 0;
         let rotationTimeout;
         let isTransitioning = false;
@@ -357,6 +420,10 @@ export const createHTMLWithData = (localAssets: LocalAsset[]): string => {
             const currentItem = contentList[currentIndex];
             
             console.log(\`Displaying: \${currentItem.name || 'Item ' + (currentIndex + 1)} (\${currentItem.type})\`);
+
+            if (window.ReactNativeWebView) {
+                window.ReactNativeWebView.postMessage(JSON.stringify({ type: 'played', url: currentItem.url, duration: currentItem.duration }));
+            }
             
             const frame = document.getElementById('content-frame');
             const img = document.getElementById('content-image');
@@ -542,11 +609,54 @@ export const createHTMLWithData = (localAssets: LocalAsset[]): string => {
             }, 250); // Reduced from 500ms to 250ms
         }
         
+        // Swaps in the pending list, carrying on after the item on screen if
+        // the new list still contains it and from the top otherwise
+        function applyPendingList() {
+            const current = contentList[currentIndex];
+            contentList = pendingList;
+            pendingList = null;
+            currentIndex = current
+                ? contentList.findIndex(item => item.url === current.url)
+                : -1;
+            console.log('Switched to new content list with ' + contentList.length + ' items');
+        }
+        
+        function receiveMessage(event) {
+            let message;
+            try {
+                message = JSON.parse(event.data);
+            } catch (e) {
+                return;
+            }
+            if (!message || message.type !== 'contentList' || !Array.isArray(message.assets)) {
+                return;
+            }
+            if (JSON.stringify(message.assets) === JSON.stringify(contentList)) {
+                pendingList = null;
+                return;
+            }
+            pendingList = message.assets;
+            
+            // Nothing is rotating yet, so there is no boundary to wait for
+            if (contentList.length === 0) {
+                applyPendingList();
+                currentIndex = 0;
+                showContent();
+            }
+        }
+        
         function rotateToNext() {
             if (isTransitioning) {
                 return;
             }
             
+            if (pendingList) {
+                applyPendingList();
+            }
+            if (contentList.length === 0) {
+                showError('No content items configured');
+                return;
+            }
             currentIndex = (currentIndex + 1) % contentList.length;
             console.log(\`Rotating to item \${currentIndex + 1} of \${contentList.length}\`);
             
@@ -564,6 +674,11 @@ export const createHTMLWithData = (localAssets: LocalAsset[]): string => {
             showError('No content items configured');
         }
         
+        // Android delivers ReactNativeWebView.postMessage on document, newer
+        // WebView versions on window; applying a list twice is a no-op
+        document.addEventListener('message', receiveMessage);
+        window.addEventListener('message', receiveMessage);
+        
         // Global error handler
         window.onerror = function(msg, url, lineNo, columnNo, error) {
             console.error('JavaScript error:', msg, 'at line', lineNo);
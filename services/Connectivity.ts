@@ -0,0 +1,31 @@
+import { NativeEventEmitter, NativeModules } from "react-native";
+
+// Default network as last reported by ConnectivityManager
+export interface ConnectivityState {
+  // Has internet capability; whether it actually reaches the server is up
+  // to the playlist poll
+  connected: boolean;
+  // Android's own connectivity check passed (never on firewalled LANs)
+  validated: boolean;
+  metered: boolean;
+  transport: "ethernet" | "wifi" | "cellular" | "vpn" | "other" | "none";
+  downstreamKbps: number;
+  upstreamKbps: number;
+}
+
+const { ConnectivityModule } = NativeModules;
+const connectivityEvents = new NativeEventEmitter(ConnectivityModule);
+
+// Cached natively; resolves immediately without touching the network
+export const getConnectivity = (): Promise<ConnectivityState> =>
+  ConnectivityModule.getState();
+
+export const subscribeToConnectivity = (
+  onChange: (state: ConnectivityState) => void
+): (() => void) => {
+  const subscription = connectivityEvents.addListener(
+    "ConnectivityChanged",
+    onChange
+  );
+  return () => subscription.remove();
+};
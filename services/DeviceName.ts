@@ -1,17 +1,85 @@
 import AsyncStorage from "@react-native-async-storage/async-storage";
-import { NativeModules } from "react-native";
+import { NativeEventEmitter, NativeModules } from "react-native";
+import NativeSignageSettings from "../specs/NativeSignageSettings";
 
 const { AndroidSettingsModule } = NativeModules;
+const settingsEvents = new NativeEventEmitter(AndroidSettingsModule);
+
+export interface VideoDecoder {
+  mimeType: string;
+  name: string;
+  hardware: boolean;
+  maxWidth: number;
+  maxHeight: number;
+}
+
+export interface DeviceSnapshot {
+  deviceName: string;
+  build: { manufacturer: string; model: string; sdkInt: number };
+  // Panel resolution (width/height) and the resolution the UI renders at
+  display: {
+    width: number;
+    height: number;
+    uiWidth: number;
+    uiHeight: number;
+    densityDpi: number;
+    refreshRate: number;
+    supportedRefreshRates: number[];
+  };
+  videoDecoders: VideoDecoder[];
+  storage: { freeBytes: number; totalBytes: number };
+  memory: { totalBytes: number; memoryClassMb: number; lowRamDevice: boolean };
+  network: { transport: string; metered: boolean };
+}
+
+// Everything about the device in one native call; build, memory and
+// decoders are cached natively after the first one
+export const getDeviceSnapshot = (): Promise<DeviceSnapshot> =>
+  AndroidSettingsModule.getDeviceSnapshot();
+
+// Receives only the groups that changed (deviceName, display or network)
+// after the first getDeviceSnapshot
+export const subscribeToDeviceSnapshot = (
+  onChange: (delta: Partial<DeviceSnapshot>) => void
+): (() => void) => {
+  const subscription = settingsEvents.addListener(
+    "DeviceSnapshotChanged",
+    onChange
+  );
+  return () => subscription.remove();
+};
+
+// Written to both stores so old-architecture builds (no SignageSettings)
+// still find it
+const persistDeviceName = async (name: string): Promise<void> => {
+  NativeSignageSettings?.saveDeviceName(name);
+  await AsyncStorage.setItem("deviceName", name);
+};
+
+// Synchronous on the new architecture; null when not saved yet or on
+// old-architecture builds
+export const getSavedDeviceNameSync = (): string | null =>
+  NativeSignageSettings?.getSavedDeviceName() ?? null;
 
 export const getDeviceName = async (): Promise<string> => {
   try {
+    // New architecture: a synchronous SharedPreferences read, no bridge hop
+    const persistedDeviceName = getSavedDeviceNameSync();
+    if (persistedDeviceName) {
+      return persistedDeviceName;
+    }
+
     let savedDeviceName = await AsyncStorage.getItem("deviceName");
 
     if (savedDeviceName) {
+      // Migrate, so the next launch takes the synchronous path
+      NativeSignageSettings?.saveDeviceName(savedDeviceName);
       return savedDeviceName;
     }
 
-    let deviceName = await AndroidSettingsModule.getDeviceName();
+    let deviceName = NativeSignageSettings
+      ? NativeSignageSettings.getSystemDeviceName()
+      : (await getDeviceSnapshot()).deviceName;
 
     if (!deviceName || deviceName === "unknown" || deviceName === "") {
       deviceName = `T95_${Math.random().toString(36).substring(2, 9)}`;
@@ -22,14 +90,44 @@ export const getDeviceName = async (): Promise<string> => {
       .replace(/_{2,}/g, "_")
       .toLowerCase();
 
-    await AsyncStorage.setItem("deviceName", cleanDeviceName);
+    await persistDeviceName(cleanDeviceName);
 
     return cleanDeviceName;
   } catch (error) {
     console.error("Error getting device name:", error);
 
     const fallbackName = `tvbox_${Date.now()}`;
-    await AsyncStorage.setItem("deviceName", fallbackName);
+    await persistDeviceName(fallbackName);
     return fallbackName;
   }
 };
+
+// Persisted app configuration; synchronous on the new architecture and
+// unavailable (null, writes ignored) on old-architecture builds
+export const getConfigValue = (key: string): string | null =>
+  NativeSignageSettings?.getConfigValue(key) ?? null;
+
+export const setConfigValue = (key: string, value: string | null): void => {
+  NativeSignageSettings?.setConfigValue(key, value);
+};
+
+export interface BootTiming {
+  bootCount: number;
+  receivedMs: number;
+  displayReadyMs?: number;
+  storageReadyMs?: number;
+  launchedMs?: number;
+  indexWarmMs?: number;
+  networkWarmMs?: number;
+  firstFrameMs?: number;
+}
+
+// Milestones of the last few boots, in ms since boot, newest first
+export const getBootTimings = async (): Promise<BootTiming[]> => {
+  try {
+    return await AndroidSettingsModule.getBootTimings();
+  } catch (error) {
+    console.error("Error getting boot timings:", error);
+    return [];
+  }
+};
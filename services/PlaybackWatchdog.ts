@@ -0,0 +1,23 @@
+import { NativeModules } from "react-native";
+
+const { SignagePlayerModule } = NativeModules;
+
+export interface WatchdogStatus {
+  stallWindowMs: number;
+  restartCount: number;
+  msSinceHeartbeat: number;
+}
+
+// Tells the native watchdog an asset was rendered and how many seconds it
+// stays up; the app is only relaunched when no further one arrives within
+// the stall window after that
+export const sendHeartbeat = (itemDurationSeconds: number): void => {
+  SignagePlayerModule.heartbeat(itemDurationSeconds);
+};
+
+export const configureWatchdog = (stallWindowSeconds: number): void => {
+  SignagePlayerModule.configureWatchdog(stallWindowSeconds);
+};
+
+export const getWatchdogStatus = (): Promise<WatchdogStatus> =>
+  SignagePlayerModule.getWatchdogStatus();
@@ -0,0 +1,19 @@
+import type { TurboModule } from "react-native";
+import { TurboModuleRegistry } from "react-native";
+
+// Startup-critical settings, read synchronously over JSI from
+// SharedPreferences. Only registered on the new architecture; null on
+// old-architecture builds, which keep using AndroidSettingsModule.
+export interface Spec extends TurboModule {
+  // Name persisted by saveDeviceName, if any
+  getSavedDeviceName(): string | null;
+  // Name from the Android device settings (global device name or
+  // Bluetooth name)
+  getSystemDeviceName(): string | null;
+  saveDeviceName(name: string): void;
+  getConfigValue(key: string): string | null;
+  // null removes the key
+  setConfigValue(key: string, value: string | null): void;
+}
+
+export default TurboModuleRegistry.get<Spec>("SignageSettings");